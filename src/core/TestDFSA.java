@@ -1,9 +1,29 @@
 package core;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
 import utilities.ArrayUtilities;
+import core.algorithm.AcceptingFSA;
+import core.algorithm.TileTokenString;
 import core.algorithm.dynamic.ConditionalPath;
+import core.algorithm.dynamic.DynamicFSA;
+import core.algorithm.dynamic.PointBreakdownObject;
+import core.algorithm.patterns.AvailableTilePattern;
 import core.algorithm.patterns.TilePattern;
 import core.algorithm.scoring.CustomScoresAndValues;
+import core.algorithm.scoring.HandScorer;
+import core.algorithm.scoring.RulesetCompiler;
+import core.algorithm.scoring.RulesetManager;
+import core.algorithm.scoring.RulesetRegistry;
+import core.algorithm.scoring.ScoreResult;
+import core.game.models.datastructures.TileData;
 
 public class TestDFSA {
 	/**
@@ -67,6 +87,826 @@ public class TestDFSA {
 		
 		// how'd they score what they scored?
 		System.out.println(scoring.getPointBreakdown().toString());
+
+		testPrecompiled(scoring);
+		testAllocation(scoring, tiles, windoftheround, playerwind);
+		testLoading();
+		testScoreCache(scoring);
+		testSilentScoring(scoring);
+		testPrefilter(scoring);
+		testReload();
+		testOptimize();
+		testMultiset(scoring);
+		testValueTables(scoring);
+		testParallelScoring(scoring);
+		testRegistry();
+		testBatchScoring(scoring);
+		testLegalWin(scoring);
+	}
+
+	/**
+	 * scores random tile set lists with the precompiled conditionals and with the original
+	 * matching by name, and checks that both give the same scores and point breakdowns.
+	 */
+	public void testPrecompiled(final CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing precompiled conditionals against matching by name");
+		Random random = new Random(2007);
+		final int lists = 20000;
+		final int[][][] tiles = new int[lists][][];
+		final int[] windoftheround = new int[lists];
+		final int[] playerwind = new int[lists];
+		for(int l=0; l<lists; l++) {
+			tiles[l] = new int[4+random.nextInt(4)][];
+			for(int s=0; s<tiles[l].length; s++) { tiles[l][s] = randomSet(random); }
+			windoftheround[l] = TilePattern.EAST + random.nextInt(4);
+			playerwind[l] = TilePattern.EAST + random.nextInt(4); }
+
+		boolean precompiled = ConditionalPath.precompiled;
+		final String[][] results = new String[2][lists];
+		int rounds = 4;
+		long[] nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+			ConditionalPath.precompiled = (mode==0);
+			for(int l=0; l<lists; l++) {
+				scoring.clearPointBreakdown();
+				int limit = scoring.checkLimitHand(tiles[l], windoftheround[l], playerwind[l]);
+				int win = scoring.getWinPoints(tiles[l], windoftheround[l], playerwind[l]);
+				int points = scoring.getTilePoints(tiles[l], windoftheround[l], playerwind[l]);
+				int multipliers = scoring.getMultipliers(tiles[l], windoftheround[l], playerwind[l], true);
+				results[mode][l] = limit+"/"+win+"/"+points+"/"+multipliers+"\n"+scoring.getPointBreakdown().toString(); }}});
+		ConditionalPath.precompiled = precompiled;
+		System.out.println("Processing time for "+rounds+"x"+lists+" lists: "+(nanos[0]/1000000)+"ms precompiled, "+(nanos[1]/1000000)+"ms by name");
+
+		int mismatches = 0;
+		for(int l=0; l<lists; l++) {
+			if(!results[0][l].equals(results[1][l])) {
+				if(mismatches++<5) { System.out.println("mismatch for "+ArrayUtilities.arrayToString(tiles[l])+":\n"+results[0][l]+"\n"+results[1][l]); }}}
+		System.out.println(mismatches+" mismatches in "+lists+" scored tile lists");
+	}
+
+	/**
+	 * measures how much memory the dfsa traversal allocates, by running every rule of the
+	 * ruleset over the same tile list many times, with and without a point breakdown.
+	 */
+	public void testAllocation(CustomScoresAndValues scoring, int[][] tiles, int windoftheround, int playerwind)
+	{
+		System.out.println("Testing dfsa traversal allocation for "+ArrayUtilities.arrayToString(tiles));
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+			System.out.println("thread allocation counting is not supported by this JVM");
+			return; }
+		com.sun.management.ThreadMXBean threadbean = (com.sun.management.ThreadMXBean) bean;
+		long thread = Thread.currentThread().getId();
+
+		String[] files = {"limithands","winpatterns","fullmultipliers","tilepoints","individualmultipliers"};
+		boolean[] value = {false,false,false,true,true};
+		DynamicFSA[][] rules = new DynamicFSA[files.length][];
+		int dfsas = 0;
+		for(int f=0; f<files.length; f++) {
+			rules[f] = DynamicFSA.loadDFSAs("config" + File.separator + "standard" + File.separator + files[f] + ".txt", scoring.getLimit());
+			dfsas += rules[f].length; }
+
+		int iterations = 100000;
+		for(int run=0; run<2; run++) {
+			PointBreakdownObject points = (run==0) ? null : new PointBreakdownObject();
+			int total = 0;
+			// warm up, so that the measured runs are not dominated by the compiler
+			for(int i=0; i<iterations/10; i++) { total += traverse(rules, value, tiles, points, windoftheround, playerwind); if(points!=null) points.reset(); }
+			long before = threadbean.getThreadAllocatedBytes(thread);
+			for(int i=0; i<iterations; i++) { total += traverse(rules, value, tiles, points, windoftheround, playerwind); if(points!=null) points.reset(); }
+			long allocated = threadbean.getThreadAllocatedBytes(thread) - before;
+			System.out.println((run==0 ? "without" : "with")+" point breakdown: "+((double)allocated/iterations/dfsas)+" bytes allocated per parse/parseValue ("+dfsas+" rules, total "+total+")"); }
+	}
+
+	private int traverse(DynamicFSA[][] rules, boolean[] value, int[][] tiles, PointBreakdownObject points, int windoftheround, int playerwind)
+	{
+		int total = 0;
+		for(int f=0; f<rules.length; f++) {
+			for(DynamicFSA dfsa: rules[f]) {
+				total += value[f] ? dfsa.parseValue(tiles, points, windoftheround, playerwind) : dfsa.parse(tiles, points, windoftheround, playerwind); }}
+		return total;
+	}
+
+	/**
+	 * measures how long loading the standard ruleset takes, and how much heap a loaded ruleset keeps
+	 */
+	public void testLoading()
+	{
+		System.out.println("Testing ruleset loading");
+		int rulesets = 200;
+		CustomScoresAndValues[] loaded = new CustomScoresAndValues[rulesets];
+		long before = usedMemory();
+		long millis = new Date().getTime();
+		for(int r=0; r<rulesets; r++) { loaded[r] = new CustomScoresAndValues("standard"); }
+		long time = new Date().getTime()-millis;
+		long after = usedMemory();
+		System.out.println("Loading time: "+((double)time/rulesets)+"ms per ruleset, retained heap: "+((after-before)/rulesets/1024)+"KB per ruleset ("+loaded.length+" loaded)");
+
+		// the same, from the text definitions and from the compiled ruleset. The ruleset is compiled
+		// in a scratch copy of the template, so that the games keep loading what they loaded before.
+		String template = "loadingtest";
+		boolean compiledrules = CustomScoresAndValues.compiledrules;
+		CustomScoresAndValues definitions;
+		CustomScoresAndValues compiled;
+		try {
+			copyTemplate("standard", template);
+			CustomScoresAndValues.compiledrules = false;
+			millis = new Date().getTime();
+			for(int r=0; r<rulesets; r++) { loaded[r] = new CustomScoresAndValues(template); }
+			System.out.println("Loading time from definitions: "+((double)(new Date().getTime()-millis)/rulesets)+"ms per ruleset");
+			definitions = loaded[0];
+			CustomScoresAndValues.compiledrules = true;
+			// the definitions have to be older than the compiled ruleset
+			Thread.sleep(1000);
+			RulesetCompiler.compile(template);
+			millis = new Date().getTime();
+			for(int r=0; r<rulesets; r++) { loaded[r] = new CustomScoresAndValues(template); }
+			System.out.println("Loading time from compiled ruleset: "+((double)(new Date().getTime()-millis)/rulesets)+"ms per ruleset (compiled ruleset used: "+CustomScoresAndValues.isCompiledCurrent(template)+")");
+			compiled = loaded[0]; }
+		catch (Exception e) {
+			e.printStackTrace();
+			return; }
+		finally {
+			CustomScoresAndValues.compiledrules = compiledrules;
+			deleteTemplate(template); }
+
+		// both have to score exactly the same
+		Random random = new Random(1789);
+		int lists = 5000;
+		int mismatches = 0;
+		if(compiled.getLimit()!=definitions.getLimit() || compiled.getHandSize()!=definitions.getHandSize() || !compiled.getScoreMethod().equals(definitions.getScoreMethod())) { mismatches++; }
+		for(int l=0; l<lists; l++) {
+			int[][] list = new int[1+random.nextInt(6)][];
+			for(int e=0; e<list.length; e++) { list[e] = randomSet(random); }
+			String[] results = new String[2];
+			for(int run=0; run<2; run++) {
+				CustomScoresAndValues rules = (run==0) ? definitions : compiled;
+				PointBreakdownObject points = new PointBreakdownObject();
+				int winpoints = rules.getWinPoints(list,TilePattern.EAST,TilePattern.WEST,points);
+				int tilepoints = rules.getTilePoints(list,TilePattern.EAST,TilePattern.WEST,points);
+				int multipliers = rules.getMultipliers(list,TilePattern.EAST,TilePattern.WEST,true,points);
+				results[run] = winpoints+"/"+tilepoints+"/"+multipliers+"/"+rules.checkLimitHand(list,TilePattern.EAST,TilePattern.WEST)+" "+ArrayUtilities.arrayToString(points.getBreakdown()); }
+			if(!results[0].equals(results[1])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches between the compiled ruleset and the definitions in "+lists+" dfsa lists");
+	}
+
+	/**
+	 * copies a template's definitions to a scratch template, for tests that change or compile them
+	 * @param template the template to copy
+	 * @param copy the name of the scratch template
+	 */
+	private void copyTemplate(String template, String copy) throws IOException
+	{
+		File dir = new File("config" + File.separator + copy);
+		dir.mkdir();
+		Files.copy(new File("config" + File.separator + template + ".cfg").toPath(), new File("config" + File.separator + copy + ".cfg").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		for(String rules: CustomScoresAndValues.RULEFILES) {
+			Files.copy(new File("config" + File.separator + template + File.separator + rules + ".txt").toPath(), new File(dir, rules + ".txt").toPath(), StandardCopyOption.REPLACE_EXISTING); }
+	}
+
+	/**
+	 * deletes a scratch template, including anything that was compiled for it
+	 * @param template the name of the scratch template
+	 */
+	private void deleteTemplate(String template)
+	{
+		File dir = new File("config" + File.separator + template);
+		File[] files = dir.listFiles();
+		if(files!=null) { for(File file: files) { file.delete(); }}
+		dir.delete();
+		new File("config" + File.separator + template + ".cfg").delete();
+	}
+
+	private long usedMemory()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i=0; i<3; i++) { System.gc(); }
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+
+	/**
+	 * plays a draw/discard sequence the way an AI player evaluates it: the potential score of every
+	 * play pattern of the hand is worked out after each draw, and again for each of the other
+	 * players' discards. This is done with and without the score cache, checking that both give
+	 * the same scores, and reporting the hit rate of the cache over the sequence.
+	 */
+	public void testScoreCache(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing hand scorer score cache");
+		Random random = new Random(2007);
+		int turns = 30;
+		final TilePattern[][] candidates = new TilePattern[4*turns][];
+		AvailableTilePattern wall = new AvailableTilePattern();
+		int[] hand = new int[13];
+		for(int t=0; t<hand.length; t++) { hand[t] = draw(wall, random); }
+		int patterns = 0;
+		for(int turn=0; turn<turns; turn++) {
+			int[] drawn = Arrays.copyOf(hand, hand.length+1);
+			drawn[hand.length] = draw(wall, random);
+			Arrays.sort(drawn);
+			candidates[4*turn] = AcceptingFSA.parse(new TileTokenString(drawn), new int[0], new int[0]);
+			int discard = random.nextInt(drawn.length);
+			for(int t=0; t<hand.length; t++) { hand[t] = drawn[t<discard ? t : t+1]; }
+			for(int other=1; other<4; other++) { candidates[4*turn+other] = AcceptingFSA.parse(new TileTokenString(hand), new int[0], new int[0]); }
+			for(int e=4*turn; e<4*turn+4; e++) { patterns += candidates[e].length; }}
+
+		boolean caching = HandScorer.caching;
+		final HandScorer scorer = new HandScorer(scoring);
+		final String[][] results = new String[2][candidates.length];
+		final String[] statistics = new String[1];
+		int rounds = 10;
+		long[] nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+			HandScorer.caching = (mode==1);
+			// every run is a game of its own, starting with an empty cache
+			scorer.getCustomScoresAndValues().getScoreCache().clear();
+			for(int e=0; e<candidates.length; e++) { results[mode][e] = ArrayUtilities.arrayToString(scorer.scoreAll(candidates[e], null, TilePattern.EAST, TilePattern.SOUTH)); }
+			if(mode==1) { statistics[0] = scorer.getScoreCacheStatistics(); }}});
+		HandScorer.caching = caching;
+		System.out.println("score cache over "+candidates.length+" evaluations ("+patterns+" patterns): "+statistics[0]);
+		System.out.println("Processing time for "+rounds+"x"+candidates.length+" evaluations: "+(nanos[0]/1000000)+"ms without the cache, "+(nanos[1]/1000000)+"ms with the cache");
+
+		int mismatches = 0;
+		for(int e=0; e<candidates.length; e++) { if(!results[0][e].equals(results[1][e])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches in "+candidates.length+" evaluations");
+	}
+
+	/**
+	 * takes a random tile that is still available off the wall
+	 */
+	private int draw(AvailableTilePattern wall, Random random)
+	{
+		int tile;
+		do { tile = random.nextInt(TilePattern.PLAYTILES); }
+		while(wall.getSpecificValue(AvailableTilePattern.SINGLE, tile)==0);
+		return wall.remove(tile);
+	}
+
+	/**
+	 * scores random hands with a silent hand scorer and with one that builds the point breakdown
+	 * as it goes, checks that both give the same scores and the same final point breakdown, and
+	 * times both.
+	 */
+	public void testSilentScoring(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing silent scoring");
+		Random random = new Random(1984);
+		final int hands = 200;
+		final TileData[] tiles = new TileData[hands];
+		for(int h=0; h<hands; h++) {
+			tiles[h] = new TileData(0,4);
+			for(int tile: randomHand(random)) { tiles[h].addTile(tile); }}
+
+		final HandScorer[] scorers = {new HandScorer(scoring), new HandScorer(scoring)};
+		scorers[0].setSilent(true);
+		scorers[1].setSilent(false);
+		final String[][] results = new String[2][hands];
+		int rounds = 10;
+		long[] nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+			for(int h=0; h<hands; h++) { results[mode][h] = String.valueOf(scorers[mode].score(HandScorer.WINNER, tiles[h], TilePattern.EAST, TilePattern.SOUTH)); }}});
+		System.out.println("Processing time for "+rounds+"x"+hands+" hands: "+(nanos[0]/1000000)+"ms silent, "+(nanos[1]/1000000)+"ms with breakdown");
+
+		// the breakdown is only asked for afterwards for the last hand, like at the end of a game hand
+		for(int mode=0; mode<2; mode++) { results[mode][hands-1] += " points\n"+ArrayUtilities.arrayToString(scorers[mode].getLastPointBreakdown()); }
+		int mismatches = 0;
+		for(int h=0; h<hands; h++) { if(!results[0][h].equals(results[1][h])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches in "+hands+" scored hands, last breakdown: "+results[0][hands-1]);
+	}
+
+	/**
+	 * scores random dfsa lists with and without the rule prefilter, checks that both give the
+	 * same points and the same point breakdown, and times both.
+	 */
+	public void testPrefilter(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing rule prefilter");
+		Random random = new Random(1492);
+		final int lists = 20000;
+		final int[][][] list = new int[lists][][];
+		for(int l=0; l<lists; l++) {
+			list[l] = new int[1+random.nextInt(6)][];
+			for(int e=0; e<list[l].length; e++) { list[l][e] = randomSet(random); }}
+
+		boolean prefiltering = CustomScoresAndValues.prefiltering;
+		final CustomScoresAndValues[] rules = {new CustomScoresAndValues(scoring), new CustomScoresAndValues(scoring)};
+		final String[][] results = new String[2][lists];
+		int rounds = 20;
+		long[] nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+			CustomScoresAndValues.prefiltering = (mode==1);
+			for(int l=0; l<lists; l++) {
+				PointBreakdownObject points = new PointBreakdownObject();
+				int windoftheround = TilePattern.EAST + (l%4);
+				int playerwind = TilePattern.EAST + (l/4)%4;
+				int winpoints = rules[mode].getWinPoints(list[l],windoftheround,playerwind,points);
+				int tilepoints = rules[mode].getTilePoints(list[l],windoftheround,playerwind,points);
+				int multipliers = rules[mode].getMultipliers(list[l],windoftheround,playerwind,true,points);
+				int limit = rules[mode].checkLimitHand(list[l],windoftheround,playerwind);
+				results[mode][l] = winpoints+"/"+tilepoints+"/"+multipliers+"/"+limit+" "+ArrayUtilities.arrayToString(points.getBreakdown()); }}});
+		CustomScoresAndValues.prefiltering = prefiltering;
+		System.out.println("Processing time for "+rounds+"x"+lists+" lists: "+(nanos[0]/1000000)+"ms without prefilter, "+(nanos[1]/1000000)+"ms with prefilter ("
+				+(rules[1].getRulesSkipped()*100/Math.max(1, rules[1].getRulesEvaluated()+rules[1].getRulesSkipped()))+"% of the rules skipped)");
+
+		int mismatches = 0;
+		for(int l=0; l<lists; l++) { if(!results[0][l].equals(results[1][l])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches in "+lists+" dfsa lists");
+
+		// and the same for whole hands, as the hand scorer scores them
+		final int hands = 200;
+		final TileData[] tiles = new TileData[hands];
+		for(int h=0; h<hands; h++) {
+			tiles[h] = new TileData(0,4);
+			for(int tile: randomHand(random)) { tiles[h].addTile(tile); }}
+		final HandScorer scorer = new HandScorer(scoring);
+		nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+			CustomScoresAndValues.prefiltering = (mode==1);
+			for(int h=0; h<hands; h++) { scorer.score(HandScorer.WINNER, tiles[h], TilePattern.EAST, TilePattern.SOUTH); }}});
+		CustomScoresAndValues.prefiltering = prefiltering;
+		System.out.println("Processing time for "+rounds+"x"+hands+" hands: "+(nanos[0]/1000000)+"ms without prefilter, "+(nanos[1]/1000000)+"ms with prefilter");
+		CustomScoresAndValues.prefiltering = true;
+		scorer.score(HandScorer.WINNER, tiles[0], TilePattern.EAST, TilePattern.SOUTH);
+		CustomScoresAndValues.prefiltering = prefiltering;
+		System.out.println("last score call with prefilter: "+scorer.getLastRulesEvaluated()+" rules evaluated, "+scorer.getLastRulesSkipped()+" skipped");
+	}
+
+	/**
+	 * copies the standard ruleset to a scratch template, and checks that a ruleset manager picks
+	 * up a changed rule file, leaves snapshots that were taken earlier alone, and keeps the
+	 * previous ruleset when a changed rule file is broken.
+	 */
+	public void testReload()
+	{
+		System.out.println("Testing ruleset reloading");
+		String template = "reloadtest";
+		File dir = new File("config" + File.separator + template);
+		RulesetManager manager = null;
+		try {
+			copyTemplate("standard", template);
+
+			manager = new RulesetManager(template);
+			manager.start();
+			CustomScoresAndValues before = manager.getRuleset();
+			int[][] flower = {{ConditionalPath.SINGLE, TilePattern.FLOWERS}};
+			int points = before.getTilePoints(flower, TilePattern.EAST, TilePattern.EAST, null);
+
+			// bonus tiles are now worth twice as much
+			File tilepoints = new File(dir, "tilepoints.txt");
+			String rules = new String(Files.readAllBytes(tilepoints.toPath()), "UTF-8");
+			Files.write(tilepoints.toPath(), rules.replace("value=4", "value=8").getBytes("UTF-8"));
+			long millis = new Date().getTime();
+			while(manager.getRuleset()==before && new Date().getTime()-millis<10000) { Thread.sleep(50); }
+			CustomScoresAndValues after = manager.getRuleset();
+			System.out.println("flower points before: "+points+", after reload: "+after.getTilePoints(flower, TilePattern.EAST, TilePattern.EAST, null)
+					+" (picked up after "+(new Date().getTime()-millis)+"ms), earlier snapshot: "+before.getTilePoints(flower, TilePattern.EAST, TilePattern.EAST, null));
+
+			// a broken rule file is not published
+			Files.write(new File(dir, "winpatterns.txt").toPath(), "[dfsa]\n\tname=broken\n\tvalue=10\n[/dfsa]\n".getBytes("UTF-8"));
+			Thread.sleep(2000);
+			System.out.println("after a broken change, the previous ruleset is "+(manager.getRuleset()==after ? "still" : "no longer")+" in use: "+manager); }
+		catch (Exception e) { e.printStackTrace(); }
+		finally {
+			if(manager!=null) { manager.stop(); }
+			deleteTemplate(template); }
+	}
+
+	/**
+	 * loads the standard ruleset with and without simplifying its rules, reports the rule sizes,
+	 * and checks that both score random dfsa lists the same.
+	 */
+	public void testOptimize()
+	{
+		System.out.println("Testing rule simplification");
+		boolean compiledrules = CustomScoresAndValues.compiledrules;
+		boolean optimizing = DynamicFSA.optimizing;
+		CustomScoresAndValues.compiledrules = false;
+		DynamicFSA.optimizing = false;
+		CustomScoresAndValues original = new CustomScoresAndValues("standard");
+		DynamicFSA.optimizing = true;
+		CustomScoresAndValues optimized = new CustomScoresAndValues("standard");
+		CustomScoresAndValues.compiledrules = compiledrules;
+		DynamicFSA.optimizing = optimizing;
+		String[] before = original.getRuleSizes();
+		String[] after = optimized.getRuleSizes();
+		for(int r=0; r<before.length; r++) { System.out.println(before[r]+" -> "+after[r].substring(after[r].indexOf(':')+2)); }
+
+		Random random = new Random(1815);
+		int lists = 20000;
+		int[][][] list = new int[lists][][];
+		for(int l=0; l<lists; l++) {
+			list[l] = new int[1+random.nextInt(6)][];
+			for(int e=0; e<list[l].length; e++) { list[l][e] = randomSet(random); }}
+		String[][] results = new String[2][lists];
+		for(int run=0; run<2; run++) {
+			CustomScoresAndValues rules = (run==0) ? original : optimized;
+			for(int l=0; l<lists; l++) {
+				PointBreakdownObject points = new PointBreakdownObject();
+				int windoftheround = TilePattern.EAST + (l%4);
+				int playerwind = TilePattern.EAST + (l/4)%4;
+				int winpoints = rules.getWinPoints(list[l],windoftheround,playerwind,points);
+				int tilepoints = rules.getTilePoints(list[l],windoftheround,playerwind,points);
+				int multipliers = rules.getMultipliers(list[l],windoftheround,playerwind,true,points);
+				results[run][l] = winpoints+"/"+tilepoints+"/"+multipliers+"/"+rules.checkLimitHand(list[l],windoftheround,playerwind)+" "+ArrayUtilities.arrayToString(points.getBreakdown()); }}
+
+		int mismatches = 0;
+		for(int l=0; l<lists; l++) { if(!results[0][l].equals(results[1][l])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches in "+lists+" dfsa lists");
+
+		// the standard rules have little to simplify, so also try a rule with an unreachable node,
+		// two equivalent nodes, and a condition that leads to two different nodes
+		String rule = "[dfsa]\nname=simplify\nvalue=1\n[node]\nname=start\n"
+			+ "[path]\nconditional=pung\nvalue=1\nlnode=a\n[/path]\n[path]\nconditional=pung\nvalue=2\nlnode=b\n[/path]\n[path]\nconditional=chow\nlnode=c\n[/path]\n[/node]\n"
+			+ "[node]\nname=a\n[path]\nconditional=pair\nvalue=1\nlnode=end\n[/path]\n[/node]\n"
+			+ "[node]\nname=b\n[path]\nconditional=pair\nvalue=1\nlnode=end\n[/path]\n[path]\nconditional=chow\nlnode=b\n[/path]\n[/node]\n"
+			+ "[node]\nname=c\n[path]\nconditional=pair\nvalue=1\nlnode=end\n[/path]\n[/node]\n"
+			+ "[node]\nname=unused\n[path]\nconditional=pair\nlnode=end\n[/path]\n[/node]\n"
+			+ "[node]\nname=end\n[path]\nconditional=empty\nlnode=accept\n[/path]\n[/node]\n[/dfsa]\n";
+		try {
+			File file = File.createTempFile("simplify", ".txt");
+			Files.write(file.toPath(), rule.getBytes("UTF-8"));
+			for(int mode=0; mode<2; mode++) {
+				boolean acceptonly = (mode==0);
+				DynamicFSA unchanged = DynamicFSA.loadDFSAs(file)[0];
+				DynamicFSA simplified = DynamicFSA.loadDFSAs(file)[0];
+				simplified.optimize(acceptonly);
+				mismatches = 0;
+				for(int l=0; l<lists; l++) {
+					int[][] tiles = new int[1+random.nextInt(4)][];
+					for(int e=0; e<tiles.length; e++) { tiles[e] = randomSet(random); }
+					PointBreakdownObject[] points = {new PointBreakdownObject(), new PointBreakdownObject()};
+					if(acceptonly && unchanged.parse(tiles,points[0],TilePattern.EAST,TilePattern.EAST)!=simplified.parse(tiles,points[1],TilePattern.EAST,TilePattern.EAST)) { mismatches++; }
+					if(!acceptonly && unchanged.parseValue(tiles,points[0],TilePattern.EAST,TilePattern.EAST)!=simplified.parseValue(tiles,points[1],TilePattern.EAST,TilePattern.EAST)) { mismatches++; }
+					else if(!ArrayUtilities.arrayToString(points[0].getBreakdown()).equals(ArrayUtilities.arrayToString(points[1].getBreakdown()))) { mismatches++; }}
+				System.out.println((acceptonly ? "accept only" : "valued")+" rule: "+unchanged.getNodeCount()+" nodes, "+unchanged.getPathCount()+" paths -> "
+						+simplified.getNodeCount()+" nodes, "+simplified.getPathCount()+" paths, "+mismatches+" mismatches in "+lists+" dfsa lists"); }
+			file.delete(); }
+		catch (IOException e) { e.printStackTrace(); }
+	}
+
+	/**
+	 * scores random tile set lists with the multiset matcher and with the automata, and checks that
+	 * both give the same scores and point breakdowns; then times the rules on ever longer lists.
+	 */
+	public void testMultiset(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing multiset rule matching");
+		System.out.println("rules matched as multisets: "+ArrayUtilities.arrayToString(scoring.getMultisetRules()));
+		Random random = new Random(1648);
+		int lists = 20000;
+		int[][][] list = new int[lists][][];
+		for(int l=0; l<lists; l++) {
+			list[l] = new int[random.nextInt(7)][];
+			// mostly honour sets, so that the honour rules get to look at more than the first set
+			for(int e=0; e<list[l].length; e++) { list[l][e] = random.nextBoolean() ? honourPung(TilePattern.HONOURS+random.nextInt(7), random.nextBoolean()) : randomSet(random); }}
+
+		boolean prefiltering = CustomScoresAndValues.prefiltering;
+		boolean multisets = DynamicFSA.multisets;
+		CustomScoresAndValues.prefiltering = false;
+		String[][] results = new String[2][lists];
+		for(int run=0; run<2; run++) {
+			DynamicFSA.multisets = (run==1);
+			CustomScoresAndValues rules = new CustomScoresAndValues(scoring);
+			for(int l=0; l<lists; l++) {
+				PointBreakdownObject points = new PointBreakdownObject();
+				int windoftheround = TilePattern.EAST + (l%4);
+				int playerwind = TilePattern.EAST + (l/4)%4;
+				int winpoints = rules.getWinPoints(list[l],windoftheround,playerwind,points);
+				int multipliers = rules.getMultipliers(list[l],windoftheround,playerwind,true,points);
+				results[run][l] = winpoints+"/"+multipliers+"/"+rules.checkLimitHand(list[l],windoftheround,playerwind)+" "+ArrayUtilities.arrayToString(points.getBreakdown()); }}
+
+		int mismatches = 0;
+		for(int l=0; l<lists; l++) { if(!results[0][l].equals(results[1][l])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches in "+lists+" dfsa lists");
+
+		// all-honour lists have to be walked to the end by the automaton for "only honours"; the
+		// summary is made once per list by the scorer, for all rules together
+		final DynamicFSA onlyhonours;
+		DynamicFSA rule = null;
+		for(DynamicFSA dfsa: DynamicFSA.loadDFSAs("config" + File.separator + "standard" + File.separator + "limithands.txt")) { if(dfsa.getName().equals("only honours")) { rule = dfsa; }}
+		onlyhonours = rule;
+		onlyhonours.optimize(true);
+		final int runs = 50000;
+		int rounds = 4;
+		for(int length=4; length<=64; length*=2) {
+			final int[][] honours = new int[length][];
+			for(int e=0; e<length; e++) { honours[e] = honourPung(TilePattern.HONOURS+(e%7), true); }
+			final long summary = DynamicFSA.summarize(honours);
+			long[] nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+				DynamicFSA.multisets = (mode==1);
+				for(int r=0; r<runs; r++) { onlyhonours.parse(honours,summary,null,TilePattern.EAST,TilePattern.EAST); }}});
+			System.out.println(length+" sets: "+(nanos[0]/rounds/runs)+"ns with the automaton, "+(nanos[1]/rounds/runs)+"ns with the multiset matcher"); }
+		DynamicFSA.multisets = multisets;
+		CustomScoresAndValues.prefiltering = prefiltering;
+	}
+
+	/**
+	 * scores random tile set lists with the per-set value tables and with the automata, and checks
+	 * that both give the same tile points, multipliers and point breakdowns, for every wind pair.
+	 */
+	public void testValueTables(final CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing per-set value tables");
+		System.out.println("rules using value tables: "+ArrayUtilities.arrayToString(scoring.getValueTableRules()));
+		Random random = new Random(1605);
+		final int lists = 20000;
+		final int[][][] list = new int[lists][][];
+		for(int l=0; l<lists; l++) {
+			list[l] = new int[random.nextInt(7)][];
+			for(int e=0; e<list[l].length; e++) { list[l][e] = randomSet(random); }}
+
+		boolean valuetables = DynamicFSA.valuetables;
+		final String[][] results = new String[2][lists];
+		int rounds = 4;
+		long[] nanos = timeModes(rounds, new TimedRun() { public void run(int mode) {
+			DynamicFSA.valuetables = (mode==1);
+			CustomScoresAndValues rules = new CustomScoresAndValues(scoring);
+			for(int l=0; l<lists; l++) {
+				PointBreakdownObject points = new PointBreakdownObject();
+				int windoftheround = TilePattern.EAST + (l%4);
+				int playerwind = TilePattern.EAST + (l/4)%4;
+				int tilepoints = rules.getTilePoints(list[l],windoftheround,playerwind,points);
+				int multipliers = rules.getMultipliers(list[l],windoftheround,playerwind,false,points);
+				results[mode][l] = tilepoints+"/"+multipliers+" "+ArrayUtilities.arrayToString(points.getBreakdown()); }}});
+		DynamicFSA.valuetables = valuetables;
+		System.out.println("Processing time for "+rounds+"x"+lists+" lists: "+(nanos[0]/1000000)+"ms with the automata, "+(nanos[1]/1000000)+"ms with the value tables");
+
+		int mismatches = 0;
+		for(int l=0; l<lists; l++) { if(!results[0][l].equals(results[1][l])) { mismatches++; }}
+		System.out.println(mismatches+" mismatches in "+lists+" dfsa lists");
+
+		// a rule where a set can fit a path that is worth nothing before one that is worth something
+		String rule = "[dfsa]\nname=overlap\nvalue=0\n[node]\nname=start\n"
+			+ "[path]\nconditional=pair\nvalue=0\nconcealedvalue=0\nlnode=start\n[/path]\n"
+			+ "[path]\nconditional=pair roundwind\nvalue=2\nlnode=start\n[/path]\n"
+			+ "[path]\nconditional=pung honour\nvalue=4\nlnode=start\n[/path]\n[/node]\n[/dfsa]\n";
+		try {
+			File file = File.createTempFile("overlap", ".txt");
+			Files.write(file.toPath(), rule.getBytes("UTF-8"));
+			DynamicFSA overlap = DynamicFSA.loadDFSAs(file)[0];
+			overlap.compile();
+			file.delete();
+			mismatches = 0;
+			for(int l=0; l<lists; l++) {
+				int[][] tiles = new int[random.nextInt(5)][];
+				for(int e=0; e<tiles.length; e++) { int tile = TilePattern.HONOURS+random.nextInt(7); tiles[e] = random.nextBoolean() ? new int[] {ConditionalPath.PAIR, tile, tile} : randomSet(random); }
+				int windoftheround = TilePattern.EAST + random.nextInt(4);
+				String[] result = new String[2];
+				for(int run=0; run<2; run++) {
+					DynamicFSA.valuetables = (run==1);
+					PointBreakdownObject points = new PointBreakdownObject();
+					result[run] = overlap.parseValue(tiles,points,windoftheround,TilePattern.EAST)+" "+ArrayUtilities.arrayToString(points.getBreakdown()); }
+				if(!result[0].equals(result[1])) { mismatches++; }}
+			DynamicFSA.valuetables = valuetables;
+			System.out.println("overlapping paths rule (value tables: "+overlap.hasValueTables()+"): "+mismatches+" mismatches in "+lists+" dfsa lists"); }
+		catch (IOException e) { e.printStackTrace(); }
+	}
+
+	/**
+	 * scores random hands on several threads at once with a single shared hand scorer, and checks
+	 * that every thread gets the same scores and point breakdowns as scoring them one at a time.
+	 */
+	public void testParallelScoring(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing parallel scoring");
+		Random random = new Random(1683);
+		final int hands = 200;
+		final TileData[] tiles = new TileData[hands];
+		for(int h=0; h<hands; h++) {
+			tiles[h] = new TileData(0,4);
+			for(int tile: randomHand(random)) { tiles[h].addTile(tile); }}
+
+		// one hand at a time, through the hand scorer that remembers the last hand
+		final String[] expected = new String[2*hands];
+		HandScorer single = new HandScorer(scoring);
+		for(int h=0; h<hands; h++) {
+			for(int type=HandScorer.WINNER; type<=HandScorer.NORMAL; type++) {
+				int score = single.score(type, tiles[h], TilePattern.EAST, TilePattern.SOUTH);
+				expected[2*h+type] = score+" points\n"+ArrayUtilities.arrayToString(single.getLastPointBreakdown()); }}
+
+		// all hands on every thread, through one shared hand scorer
+		final HandScorer shared = new HandScorer(scoring);
+		final CustomScoresAndValues rules = shared.getCustomScoresAndValues();
+		final int[] mismatches = new int[1];
+		Thread[] threads = new Thread[4];
+		long millis = new Date().getTime();
+		for(int t=0; t<threads.length; t++) {
+			final int offset = t*hands/threads.length;
+			threads[t] = new Thread(new Runnable() { public void run() {
+				int wrong = 0;
+				for(int i=0; i<hands; i++) {
+					int h = (i+offset)%hands;
+					for(int type=HandScorer.WINNER; type<=HandScorer.NORMAL; type++) {
+						ScoreResult result = shared.score(type, tiles[h], TilePattern.EAST, TilePattern.SOUTH, true);
+						String outcome = result.getScore()+" points\n"+ArrayUtilities.arrayToString(result.getBreakdown());
+						if(!outcome.equals(expected[2*h+type]) || result.getScore()!=rules.getFinalScore(result.getWinPoints(), result.getTilePoints(), result.getMultipliers(), null)) { wrong++; }}}
+				synchronized(mismatches) { mismatches[0] += wrong; }}});
+			threads[t].start(); }
+		try { for(Thread thread: threads) { thread.join(); }}
+		catch (InterruptedException e) { e.printStackTrace(); }
+		System.out.println("Processing time ("+threads.length+" threads, "+(threads.length*2*hands)+" scored hands): "+(new Date().getTime()-millis)+"ms");
+		System.out.println(mismatches[0]+" mismatches in "+(threads.length*2*hands)+" scored hands");
+	}
+
+	/**
+	 * sets up many tables' worth of rulesets through the registry and by loading them, checks that
+	 * the registry hands out one shared ruleset per template, and a new one once its definitions change.
+	 */
+	public void testRegistry()
+	{
+		System.out.println("Testing ruleset registry");
+		int tables = 200;
+		CustomScoresAndValues[] loaded = new CustomScoresAndValues[tables];
+		CustomScoresAndValues[] shared = new CustomScoresAndValues[tables];
+		long nanos = System.nanoTime();
+		for(int t=0; t<tables; t++) { loaded[t] = new CustomScoresAndValues("standard"); }
+		long loadtime = System.nanoTime()-nanos;
+		nanos = System.nanoTime();
+		for(int t=0; t<tables; t++) { shared[t] = RulesetRegistry.getRuleset("standard"); }
+		long sharedtime = System.nanoTime()-nanos;
+		int distinct = 0;
+		for(int t=0; t<tables; t++) { if(shared[t]!=shared[0]) { distinct++; }}
+		System.out.println(tables+" tables: "+(loadtime/1000000)+"ms loading every ruleset, "+(sharedtime/1000000)+"ms through the registry, "
+				+distinct+" tables with a ruleset of their own ("+RulesetRegistry.getStatistics()+")");
+		System.out.println("shared manager: "+(RulesetRegistry.getManager("standard")==RulesetRegistry.getManager("standard"))
+				+", publishes the shared ruleset: "+(RulesetRegistry.getManager("standard").getRuleset()==shared[0]));
+
+		// changed definitions get a ruleset of their own
+		String template = "registrytest";
+		File dir = new File("config" + File.separator + template);
+		try {
+			copyTemplate("standard", template);
+			CustomScoresAndValues before = RulesetRegistry.getRuleset(template);
+			File tilepoints = new File(dir, "tilepoints.txt");
+			String rules = new String(Files.readAllBytes(tilepoints.toPath()), "UTF-8");
+			Files.write(tilepoints.toPath(), rules.replace("value=4", "value=8").getBytes("UTF-8"));
+			CustomScoresAndValues after = RulesetRegistry.getRuleset(template);
+			System.out.println("copied template shares the standard ruleset: "+(before==shared[0])+", changed definitions share the earlier ruleset: "+(after==before)
+					+", unchanged definitions share the changed ruleset: "+(after==RulesetRegistry.getRuleset(template))); }
+		catch (IOException e) { e.printStackTrace(); }
+		finally {
+			deleteTemplate(template); }
+	}
+
+	/**
+	 * scores all the patterns random hands can be read as, with and without a locked pung, both as
+	 * a batch and one pattern at a time, checks that both give the same scores, and times them.
+	 * Also checks that the hand scorer, which scores its candidate patterns as a batch, gives every
+	 * hand the score of its best pattern.
+	 */
+	public void testBatchScoring(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing batch scoring");
+		Random random = new Random(1901);
+		final int hands = 400;
+		final TilePattern[][] candidates = new TilePattern[hands][];
+		TilePattern[] locked = new TilePattern[hands];
+		int patterns = 0;
+		final int[][] hand = new int[hands][];
+		for(int h=0; h<hands; h++) {
+			hand[h] = randomHand(random);
+			Arrays.sort(hand[h]);
+			candidates[h] = AcceptingFSA.parse(new TileTokenString(hand[h]), new int[0], new int[0]);
+			patterns += candidates[h].length;
+			int tile = TilePattern.HONOURS + random.nextInt(7);
+			locked[h] = (h%2==0) ? null : AcceptingFSA.parseOpen(new TilePattern(), new int[] {tile, tile, tile}, new int[] {TilePattern.PUNG}); }
+
+		// the scores as the rules give them for every merged list on its own
+		int mismatches = 0;
+		final HandScorer scorer = new HandScorer(scoring);
+		for(int h=0; h<hands; h++) {
+			int windoftheround = TilePattern.EAST + (h%4);
+			int playerwind = TilePattern.EAST + (h/4)%4;
+			int[] scores = scorer.scoreAll(candidates[h], locked[h], windoftheround, playerwind);
+			for(int c=0; c<candidates[h].length; c++) {
+				int[][] list = candidates[h][c].getDFSAlist(false);
+				if(locked[h]!=null) { list = ArrayUtilities.mergeIntIntArrays(locked[h].getDFSAlist(false), list); }
+				int winpoints = scoring.getWinPoints(list,windoftheround,playerwind,null);
+				int expected = (winpoints==0) ? 0 : scoring.getFinalScore(winpoints, scoring.getTilePoints(list,windoftheround,playerwind,null), scoring.getMultipliers(list,windoftheround,playerwind,true,null), null);
+				if(scores[c]!=expected) { mismatches++; }}}
+		System.out.println(mismatches+" mismatches in "+patterns+" scored patterns");
+
+		// the hand scorer picks its best pattern from a batch as well: without open or bonus tiles,
+		// a winning hand scores what its best scoring pattern scores on its own
+		mismatches = 0;
+		for(int h=0; h<hands; h++) {
+			TileData tiles = new TileData(0,4);
+			for(int tile: hand[h]) { tiles.addTile(tile); }
+			int best = 0;
+			for(TilePattern candidate: AcceptingFSA.parse(new TileTokenString(hand[h]), new int[0], new int[0])) {
+				int[][] list = candidate.getDFSAlist(true);
+				best = Math.max(best, scoring.getFinalScore(scoring.getWinPoints(list,TilePattern.EAST,TilePattern.SOUTH,null), scoring.getTilePoints(list,TilePattern.EAST,TilePattern.SOUTH,null), scoring.getMultipliers(list,TilePattern.EAST,TilePattern.SOUTH,true,null), null)); }
+			if(scorer.score(HandScorer.WINNER, tiles, TilePattern.EAST, TilePattern.SOUTH)!=best) { mismatches++; }}
+		System.out.println(mismatches+" mismatches against the best single pattern score in "+hands+" scored hands");
+
+		// the batch against the per-pattern loop, with the score cache out of the way
+		boolean caching = HandScorer.caching;
+		HandScorer.caching = false;
+		mismatches = 0;
+		for(int h=0; h<hands; h++) {
+			int[] scores = scorer.scoreAll(candidates[h], null, TilePattern.EAST, TilePattern.SOUTH);
+			for(int c=0; c<candidates[h].length; c++) { if(scores[c]!=scorer.scorePotential(candidates[h][c], TilePattern.EAST, TilePattern.SOUTH)) { mismatches++; }}}
+		int runs = 20;
+		long[] nanos = timeModes(runs, new TimedRun() { public void run(int mode) {
+			for(int h=0; h<hands; h++) {
+				if(mode==0) { for(int c=0; c<candidates[h].length; c++) { scorer.scorePotential(candidates[h][c], TilePattern.EAST, TilePattern.SOUTH); }}
+				else { scorer.scoreAll(candidates[h], null, TilePattern.EAST, TilePattern.SOUTH); }}}});
+		HandScorer.caching = caching;
+		System.out.println(mismatches+" mismatches against scorePotential in "+patterns+" patterns");
+		System.out.println("Processing time for "+runs+"x"+patterns+" patterns: "+(nanos[0]/1000000)+"ms one pattern at a time, "+(nanos[1]/1000000)+"ms as batches");
+	}
+
+	/**
+	 * checks that a win is legal for four sets and a pair, for a limit hand of another shape, and
+	 * not for a hand that is neither, with and without a concealed kong.
+	 */
+	public void testLegalWin(CustomScoresAndValues scoring)
+	{
+		System.out.println("Testing win declarations");
+		HandScorer scorer = new HandScorer(scoring);
+		int E = TilePattern.EAST, S = TilePattern.SOUTH, W = TilePattern.WEST, N = TilePattern.NORTH;
+		int R = TilePattern.RED, G = TilePattern.GREEN, Wh = TilePattern.WHITE;
+		int[][] hands = {
+			{0,1,2, 3,4,5, 9,9,9, E,E,E, R,R},
+			// only honours, but not four sets and a pair
+			{E,E,S,S,W,W,N,N,R,R,G,G,Wh,Wh},
+			{0,1,2, 3,4,5, 9,9,9, E,S,W, R,R},
+			{E,E,E,E, S,S,W,W,N,N,R,R,G,G,Wh} };
+		boolean[] expected = {true, true, false, true};
+		int mismatches = 0;
+		for(int h=0; h<hands.length; h++) {
+			TileData tiles = new TileData(0,4);
+			for(int tile: hands[h]) { tiles.addTile(tile); }
+			if(h==3) { tiles.moveToOpen(new int[] {E,E,E,E}, true); }
+			boolean legal = scorer.legalWin(tiles, TilePattern.EAST, TilePattern.SOUTH);
+			if(legal!=expected[h]) { mismatches++; }
+			System.out.println(ArrayUtilities.arrayToString(hands[h])+": "+(legal ? "legal" : "illegal")+" win"); }
+		System.out.println(mismatches+" mismatches in "+hands.length+" win declarations");
+	}
+
+	/**
+	 * the work for one of the two modes that timeModes compares
+	 */
+	private interface TimedRun { void run(int mode); }
+
+	/**
+	 * times two modes of the same work against each other. Which of the two goes first changes
+	 * every round, and the first round only warms up.
+	 * @param rounds the number of measured rounds
+	 * @param timed the work, for mode 0 and for mode 1
+	 * @return long[2] array with the nanoseconds spent in each mode over the measured rounds
+	 */
+	private long[] timeModes(int rounds, TimedRun timed)
+	{
+		long[] nanos = new long[2];
+		for(int round=0; round<=rounds; round++) {
+			for(int m=0; m<2; m++) {
+				int mode = m ^ (round%2);
+				long start = System.nanoTime();
+				timed.run(mode);
+				if(round>0) { nanos[mode] += System.nanoTime()-start; }}}
+		return nanos;
+	}
+
+	/**
+	 * makes a dfsa list entry for a pung
+	 */
+	private int[] honourPung(int tile, boolean concealed)
+	{
+		return new int[] {concealed ? ConditionalPath.CONCEALED_PUNG : ConditionalPath.PUNG, tile, tile, tile};
+	}
+
+	/**
+	 * generates a random hand of four sets and a pair
+	 */
+	private int[] randomHand(Random random)
+	{
+		int[] counts = new int[TilePattern.PLAYTILES];
+		int[] hand = new int[0];
+		while(hand.length<14) {
+			int[] set;
+			if(hand.length==12) { int tile = random.nextInt(TilePattern.PLAYTILES); set = new int[] {tile, tile}; }
+			else if(random.nextBoolean()) { int tile = random.nextInt(TilePattern.PLAYTILES); set = new int[] {tile, tile, tile}; }
+			else { int start = 9*random.nextInt(3) + random.nextInt(7); set = new int[] {start, start+1, start+2}; }
+			boolean fits = true;
+			for(int tile: set) { fits &= (++counts[tile]<=4); }
+			if(fits) { hand = ArrayUtilities.mergeIntArrays(hand, set); }
+			else { for(int tile: set) { counts[tile]--; }}}
+		return hand;
+	}
+
+	/**
+	 * generates a random open or concealed tile set in dfsa list form
+	 */
+	private int[] randomSet(Random random)
+	{
+		int set = ConditionalPath.SINGLE + random.nextInt(6);
+		int marker = random.nextBoolean() ? set : set+ConditionalPath.CONCEALED;
+		if(set==ConditionalPath.CONNECTEDPAIR || set==ConditionalPath.CHOW) {
+			int start = 9*random.nextInt(3) + random.nextInt(set==ConditionalPath.CHOW ? 7 : 8);
+			if(set==ConditionalPath.CHOW) { int[] ret = {marker, start, start+1, start+2}; return ret; }
+			int[] ret = {marker, start, start+1}; return ret; }
+		int tile = (set==ConditionalPath.SINGLE) ? random.nextInt(TilePattern.PLAYTILES+TilePattern.BONUSTILES) : random.nextInt(TilePattern.PLAYTILES);
+		int[] ret = new int[set==ConditionalPath.KONG ? 5 : set==ConditionalPath.PUNG ? 4 : set==ConditionalPath.PAIR ? 3 : 2];
+		ret[0] = marker;
+		for(int t=1; t<ret.length; t++) { ret[t] = tile; }
+		return ret;
 	}
 
 
@@ -4,10 +4,15 @@
  */
 package core;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
 
 import core.algorithm.AcceptingFSA;
+import core.algorithm.TileCountFSA;
 import core.algorithm.TileTokenString;
+import core.algorithm.WinningHandTable;
 import core.algorithm.patterns.AvailableTilePattern;
 import core.algorithm.patterns.RequiredTilePattern;
 import core.algorithm.patterns.TilePattern;
@@ -26,6 +31,220 @@ public class TestFSA {
 	public TestFSA()
 	{
 		testResolution(); 
+		testCountVector();
+		testCache();
+		testDFSAlist();
+		testCopyOnWrite();
+		testWinningHandTable();
+	}
+
+	/**
+	 * checks the winning hand lookup tables against the full parse: a hand is complete
+	 * when some division of it has no singles or connected pairs, and exactly one pair.
+	 */
+	public void testWinningHandTable()
+	{
+		System.out.println("Testing winning hand tables against tile count engine");
+		long millis = new Date().getTime();
+		for(int suit=0; suit<WinningHandTable.SUITS; suit++) { WinningHandTable.getTable(suit); }
+		System.out.println("Table generation time: "+(new Date().getTime()-millis)+"ms");
+		Random random = new Random(2007);
+		int mismatches = 0;
+		int complete = 0;
+		for(int h=0; h<5000; h++) {
+			int[] tiles = new int[2+3*random.nextInt(5)];
+			int[] counts = new int[TileCountFSA.TILES];
+			// keep most tiles in a narrow range, or complete hands would hardly ever come up
+			for(int t=0; t<tiles.length; t++) {
+				int tile;
+				do { tile = (random.nextInt(4)==0) ? random.nextInt(TileCountFSA.TILES) : TilePattern.CHARACTER_ONE+random.nextInt(5); }
+				while(counts[tile]==4);
+				counts[tile]++;
+				tiles[t] = tile; }
+			boolean parsed = false;
+			for(TilePattern p: TileCountFSA.parse(new TilePattern(), counts)) {
+				if(p.getGenericValue(TilePattern.SINGLE)==0 && p.getGenericValue(TilePattern.CONNECTED)==0 && p.getGenericValue(TilePattern.PAIR)==1) { parsed = true; }}
+			boolean table = WinningHandTable.isWinningHand(tiles, new int[0]);
+			if(table) { complete++; }
+			if(parsed!=table) {
+				mismatches++;
+				System.out.println("mismatch for hand "+new TileTokenString(tiles)+": parse says "+parsed+", table says "+table); }}
+		System.out.println(complete+" complete hands, "+mismatches+" mismatches");
+	}
+
+	/**
+	 * checks that the tile count engine yields the same set of patterns as the token string FSA,
+	 * for a number of random 14 tile hands, and compares the time both take.
+	 */
+	public void testCountVector()
+	{
+		System.out.println("Testing tile count engine against token string FSA");
+		Random random = new Random(2007);
+		long fsatime = 0;
+		long counttime = 0;
+		int mismatches = 0;
+		int duplicates = 0;
+		boolean caching = AcceptingFSA.caching;
+		boolean countvector = AcceptingFSA.countvector;
+		AcceptingFSA.caching = false;
+		for(int h=0; h<200; h++) {
+			AvailableTilePattern available = new AvailableTilePattern();
+			int[] tiles = new int[14];
+			// bias the draw towards a single suit, so hands get plenty of connected tiles
+			for(int t=0; t<tiles.length; t++) {
+				int tile;
+				do { tile = (random.nextInt(3)==0) ? random.nextInt(TileCountFSA.TILES) : random.nextInt(9); }
+				while(available.getSpecificValue(AvailableTilePattern.SINGLE, tile)==0);
+				tiles[t] = available.remove(tile); }
+
+			AcceptingFSA.countvector = false;
+			long millis = new Date().getTime();
+			TilePattern[] fsapatterns = AcceptingFSA.parse(new TileTokenString(tiles), new int[0], new int[0]);
+			fsatime += new Date().getTime()-millis;
+			boolean dedupe = AcceptingFSA.dedupe;
+			AcceptingFSA.dedupe = false;
+			duplicates += AcceptingFSA.parse(new TileTokenString(tiles), new int[0], new int[0]).length - fsapatterns.length;
+			AcceptingFSA.dedupe = dedupe;
+
+			AcceptingFSA.countvector = true;
+			millis = new Date().getTime();
+			TilePattern[] countpatterns = AcceptingFSA.parse(new TileTokenString(tiles), new int[0], new int[0]);
+			counttime += new Date().getTime()-millis;
+
+			HashSet<String> fsaset = new HashSet<String>();
+			for(TilePattern p: fsapatterns) { fsaset.add(signature(p)); }
+			HashSet<String> countset = new HashSet<String>();
+			for(TilePattern p: countpatterns) { countset.add(signature(p)); }
+			if(!fsaset.equals(countset) || countset.size()!=countpatterns.length || fsaset.size()!=fsapatterns.length) {
+				mismatches++;
+				System.out.println("mismatch for hand "+new TileTokenString(tiles)+": "+fsaset.size()+" distinct FSA patterns, "+countpatterns.length+" count engine patterns"); }}
+		AcceptingFSA.caching = caching;
+		AcceptingFSA.countvector = countvector;
+		System.out.println(mismatches+" mismatches");
+		System.out.println(duplicates+" duplicate patterns removed from the token string FSA results");
+		System.out.println("Processing time (token string FSA): "+fsatime+"ms");
+		System.out.println("Processing time (tile count engine): "+counttime+"ms");
+	}
+
+	/**
+	 * checks that the lazily built DFSA lists match the ones built by force, and that
+	 * a pattern's DFSA list is rebuilt after the pattern changes.
+	 */
+	public void testDFSAlist()
+	{
+		System.out.println("Testing lazy DFSA list construction");
+		int[] tiles = {0,1,2,2,3,4,5,5,6,7,27,27,27,31};
+		TilePattern[] patterns = AcceptingFSA.parse(new TileTokenString(tiles), new int[0], new int[0]);
+		int mismatches = 0;
+		for(TilePattern pattern: patterns) {
+			int[][] lazy = pattern.getDFSAlist(false);
+			int[][] concealed = pattern.getDFSAlist(true);
+			pattern.forceFormDFSAlist();
+			if(!Arrays.deepEquals(lazy, pattern.getDFSAlist(false)) || !Arrays.deepEquals(concealed, pattern.getDFSAlist(true))) mismatches++; }
+		System.out.println(mismatches+" mismatches between lazily built and forced DFSA lists");
+		TilePattern pattern = new TilePattern(patterns[0]);
+		int entries = pattern.getDFSAlist(false).length;
+		pattern.incrementTileAndPattern(TilePattern.RED, TilePattern.PUNG);
+		System.out.println("DFSA list follows pattern changes: "+(pattern.getDFSAlist(false).length==entries+1));
+	}
+
+	/**
+	 * checks that pattern copies that share their bins with the original never see each
+	 * other's changes, whichever of them is modified, and that available tile snapshots
+	 * are unaffected by tiles being removed afterwards.
+	 */
+	public void testCopyOnWrite()
+	{
+		System.out.println("Testing copy-on-write pattern bins");
+		int[] tiles = {0,1,2,2,3,4,5,5,6,7,27,27,27,31};
+		TilePattern original = AcceptingFSA.parse(new TileTokenString(tiles), new int[0], new int[0])[0];
+		String originalsignature = signature(original);
+		TilePattern copy = new TilePattern(original);
+		copy.incrementTileAndPattern(TilePattern.RED, TilePattern.PUNG);
+		System.out.println("original unaffected by changes to its copy: "+originalsignature.equals(signature(original)));
+		String copysignature = signature(copy);
+		original.incrementTileAndPattern(TilePattern.BAMBOO_ONE, TilePattern.SINGLE);
+		System.out.println("copy unaffected by changes to its original: "+copysignature.equals(signature(copy)));
+		// the same for copies that start out sharing all their bins with the original
+		TilePattern shared = new TilePattern(original).share();
+		String sharedsignature = signature(shared);
+		TilePattern[] copies = {new TilePattern(shared), new TilePattern(shared)};
+		copies[0].incrementTileAndPattern(TilePattern.RED, TilePattern.PUNG);
+		String secondsignature = signature(copies[1]);
+		shared.incrementTileAndPattern(TilePattern.GREEN, TilePattern.PAIR);
+		System.out.println("shared copies unaffected by changes to each other and their original: "+(secondsignature.equals(sharedsignature) && secondsignature.equals(signature(copies[1])) && !signature(copies[0]).equals(sharedsignature)));
+		AvailableTilePattern available = new AvailableTilePattern();
+		AvailableTilePattern snapshot = new AvailableTilePattern(available);
+		String snapshotsignature = signature(snapshot);
+		available.remove(TilePattern.BAMBOO_FIVE);
+		System.out.println("available tile snapshot unaffected by removal: "+snapshotsignature.equals(signature(snapshot)));
+	}
+
+	/**
+	 * checks that repeated parses are served from the parse cache, and that modifying
+	 * the patterns a parse returns does not affect what the cache hands out later.
+	 */
+	public void testCache()
+	{
+		System.out.println("Testing parse cache");
+		AcceptingFSA.cache.clear();
+		int[] tiles = {0,1,2,2,3,4,5,5,6,7,27,27,27,31};
+		int[] open = {9,10,11};
+		int[] sets = {TilePattern.CHOW};
+		TilePattern[] first = AcceptingFSA.parse(new TileTokenString(tiles), open, sets);
+		String firstsignature = signature(first[0]);
+		first[0].incrementTileAndPattern(TilePattern.RED, TilePattern.PUNG);
+		TilePattern[] second = AcceptingFSA.parse(new TileTokenString(tiles), open, sets);
+		System.out.println("cached pattern unaffected by modification: "+firstsignature.equals(signature(second[0])));
+
+		// cached parses against parsing every time, including building the dfsa lists the scorer asks for.
+		// Which of the two goes first changes every round, and the first round only warms up.
+		boolean caching = AcceptingFSA.caching;
+		int rounds = 10;
+		int parses = 200;
+		long[] nanos = new long[2];
+		for(int round=0; round<=rounds; round++) {
+			for(int m=0; m<2; m++) {
+				int mode = m ^ (round%2);
+				AcceptingFSA.caching = (mode==1);
+				long start = System.nanoTime();
+				for(int r=0; r<parses; r++) {
+					for(TilePattern pattern: AcceptingFSA.parse(new TileTokenString(tiles), open, sets)) { pattern.getDFSAlist(true); }}
+				if(round>0) { nanos[mode] += System.nanoTime()-start; }}}
+		AcceptingFSA.caching = caching;
+		System.out.println("Processing time for "+rounds+"x"+parses+" parses of "+second.length+" patterns: "+(nanos[0]/1000000)+"ms without the cache, "+(nanos[1]/1000000)+"ms from the cache");
+
+		// a cache hit and a miss leave the token string in the same state
+		TileTokenString hit = new TileTokenString(tiles);
+		AcceptingFSA.parse(hit, open, sets);
+		AcceptingFSA.cache.clear();
+		TileTokenString miss = new TileTokenString(tiles);
+		AcceptingFSA.parse(miss, open, sets);
+		System.out.println("token string left alone by a cache hit: "+hit.hasNext()+", by a miss: "+miss.hasNext());
+
+		// switching engines is not served from the cache, and the token string FSA without duplicate removal returns more patterns
+		boolean countvector = AcceptingFSA.countvector;
+		boolean dedupe = AcceptingFSA.dedupe;
+		AcceptingFSA.countvector = false;
+		AcceptingFSA.dedupe = false;
+		int duplicates = AcceptingFSA.parse(new TileTokenString(tiles), open, sets).length;
+		AcceptingFSA.dedupe = true;
+		int distinct = AcceptingFSA.parse(new TileTokenString(tiles), open, sets).length;
+		AcceptingFSA.countvector = countvector;
+		AcceptingFSA.dedupe = dedupe;
+		System.out.println("patterns with duplicates: "+duplicates+", without: "+distinct+", count engine: "+AcceptingFSA.parse(new TileTokenString(tiles), open, sets).length);
+		System.out.println("cache: "+AcceptingFSA.cache);
+	}
+
+	// bin signature for a pattern, independent of its pattern type
+	private String signature(TilePattern pattern)
+	{
+		String ret = "";
+		for(int g=0; g<TilePattern.genericnames.length; g++) {
+			ret += pattern.getGenericValue(g)+":";
+			for(int s=0; s<TileCountFSA.TILES; s++) { ret += pattern.getSpecificValue(g,s)+","; }
+			ret += "|"; }
+		return ret;
 	}
 
 	public void testResolution()
@@ -0,0 +1,164 @@
+/*
+ * This class compares the shanten calculator to the full pattern evaluation that
+ * the AI players run, both in terms of results and in terms of processing time,
+ * and checks that the evaluation state gives the same results as a fresh evaluation.
+ */
+package core;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import utilities.ArrayUtilities;
+import core.algorithm.AcceptingFSA;
+import core.algorithm.ShantenCalculator;
+import core.algorithm.TileCountFSA;
+import core.algorithm.TileTokenString;
+import core.algorithm.WinningHandTable;
+import core.algorithm.patterns.AvailableTilePattern;
+import core.algorithm.patterns.RequiredTilePattern;
+import core.algorithm.patterns.TilePattern;
+import core.algorithm.scoring.CustomScoresAndValues;
+import core.algorithm.scoring.HandScorer;
+import core.algorithm.scoring.PatternScorer;
+import core.game.models.datastructures.EvaluationState;
+
+
+public class TestShanten {
+
+	public static void main(String[] args)
+	{
+		new TestShanten();
+	}
+
+	public TestShanten()
+	{
+		testShanten();
+		testEvaluationState();
+	}
+
+	public void testShanten()
+	{
+		int hands = 200;
+		Random random = new Random(2007);
+		int[][] hand = new int[hands][];
+		AvailableTilePattern[] available = new AvailableTilePattern[hands];
+		for(int h=0; h<hands; h++) {
+			available[h] = new AvailableTilePattern();
+			hand[h] = new int[14];
+			for(int t=0; t<hand[h].length; t++) {
+				int tile;
+				do { tile = random.nextInt(TileCountFSA.TILES); }
+				while(available[h].getSpecificValue(AvailableTilePattern.SINGLE, tile)==0);
+				hand[h][t] = available[h].remove(tile); }}
+
+		// shanten numbers and best discards
+		System.out.println("Testing shanten calculation for "+hands+" hands");
+		long millis = new Date().getTime();
+		int[] shanten = new int[hands];
+		int[][] discards = new int[hands][];
+		for(int h=0; h<hands; h++) {
+			shanten[h] = ShantenCalculator.shanten(hand[h], new int[0]);
+			discards[h] = ShantenCalculator.bestDiscards(hand[h], new int[0]); }
+		System.out.println("Processing time: "+ (new Date().getTime()-millis)+ "ms ("+ShantenCalculator.size()+" suit entries)");
+		millis = new Date().getTime();
+		for(int h=0; h<hands; h++) {
+			ShantenCalculator.shanten(hand[h], new int[0]);
+			ShantenCalculator.bestDiscards(hand[h], new int[0]); }
+		System.out.println("Processing time, second run: "+ (new Date().getTime()-millis)+ "ms");
+
+		// the same hands through the play pattern evaluation
+		System.out.println("Testing play pattern evaluation for "+hands+" hands");
+		PatternScorer scorer = new PatternScorer(0,new HandScorer(new CustomScoresAndValues("standard")));
+		TilePattern standardwin = TilePattern.standardWinPattern();
+		boolean caching = AcceptingFSA.caching;
+		AcceptingFSA.caching = false;
+		millis = new Date().getTime();
+		for(int h=0; h<hands; h++) {
+			TilePattern[] patterns = AcceptingFSA.parse(new TileTokenString(hand[h].clone()), new int[0], new int[0]);
+			TilePattern[] differences = standardwin.naiveDifferences(patterns);
+			RequiredTilePattern[] required = standardwin.complexDifferences(patterns, differences);
+			scorer.determinePatternEase(required, patterns, available[h], hand[h], TilePattern.EAST, TilePattern.EAST, 136-4*13, 13); }
+		System.out.println("Processing time: "+ (new Date().getTime()-millis)+ "ms");
+		AcceptingFSA.caching = caching;
+
+		// a complete hand has to come out as shanten -1
+		int mismatches = 0;
+		for(int h=0; h<hands; h++) {
+			boolean complete = WinningHandTable.isWinningHand(hand[h], new int[0]);
+			if(complete!=(shanten[h]==ShantenCalculator.COMPLETE)) {
+				mismatches++;
+				System.out.println("mismatch for hand "+ArrayUtilities.arrayToString(hand[h])+": shanten "+shanten[h]+", complete: "+complete); }}
+		System.out.println(mismatches+" mismatches against the winning hand tables");
+
+		System.out.println("=================================================================");
+		for(int h=0; h<10; h++) {
+			System.out.println("["+new TileTokenString(hand[h])+"]: shanten "+shanten[h]+", best discards "+ArrayUtilities.arrayToString(discards[h])); }
+		System.out.println("=================================================================");
+	}
+
+	/**
+	 * plays a 30 turn draw/discard sequence, and checks that the evaluations the evaluation
+	 * state hands out (reused or not) match a fresh evaluation of the same hand every time.
+	 * As in a game, the hand is evaluated again for each of the other players' discards.
+	 */
+	public void testEvaluationState()
+	{
+		System.out.println("Testing evaluation state over 30 turns");
+		PatternScorer scorer = new PatternScorer(0,new HandScorer(new CustomScoresAndValues("standard")));
+		Random random = new Random(2007);
+		AvailableTilePattern wall = new AvailableTilePattern();
+		int[] hand = new int[13];
+		for(int t=0; t<hand.length; t++) { hand[t] = draw(wall, random); }
+		EvaluationState state = new EvaluationState();
+		int playerwind = TilePattern.EAST;
+		int mismatches = 0;
+		int evaluations = 0;
+		for(int turn=0; turn<30; turn++) {
+			// halfway through, the wind changes, which has to force a full recompute
+			if(turn==15) { playerwind = TilePattern.SOUTH; }
+			int[] drawn = Arrays.copyOf(hand, hand.length+1);
+			drawn[hand.length] = draw(wall, random);
+			Arrays.sort(drawn);
+			mismatches += compareEvaluations(state, scorer, drawn, playerwind);
+			int discard = random.nextInt(drawn.length);
+			for(int t=0; t<hand.length; t++) { hand[t] = drawn[t<discard ? t : t+1]; }
+			for(int other=0; other<3; other++) { mismatches += compareEvaluations(state, scorer, hand, playerwind); }
+			evaluations += 4; }
+		System.out.println(evaluations+" evaluations: "+state);
+		System.out.println(mismatches+" mismatches against fresh evaluations");
+	}
+
+	/**
+	 * evaluates a hand through the evaluation state and from scratch, and counts the play patterns for which the two differ
+	 */
+	private int compareEvaluations(EvaluationState state, PatternScorer scorer, int[] hand, int playerwind)
+	{
+		state.update(hand, new int[0], new int[0], TilePattern.EAST, playerwind);
+		EvaluationState.Evaluation[] kept = state.evaluate(AcceptingFSA.parse(new TileTokenString(hand.clone()), new int[0], new int[0]), scorer);
+		EvaluationState fresh = new EvaluationState();
+		fresh.update(hand, new int[0], new int[0], TilePattern.EAST, playerwind);
+		EvaluationState.Evaluation[] computed = fresh.evaluate(AcceptingFSA.parse(new TileTokenString(hand.clone()), new int[0], new int[0]), scorer);
+		if(kept.length!=computed.length) {
+			System.out.println("mismatch for hand "+ArrayUtilities.arrayToString(hand)+": "+kept.length+" play patterns against "+computed.length);
+			return 1; }
+		int mismatches = 0;
+		for(int p=0; p<kept.length; p++) {
+			if(!kept[p].pattern.equals(computed[p].pattern) || !kept[p].difference.equals(computed[p].difference)
+					|| !kept[p].required.equals(computed[p].required) || kept[p].potential!=computed[p].potential) {
+				mismatches++;
+				System.out.println("mismatch for hand "+ArrayUtilities.arrayToString(hand)+", play pattern "+p); }}
+		return mismatches;
+	}
+
+	/**
+	 * takes a random tile that is still available off the wall
+	 */
+	private int draw(AvailableTilePattern wall, Random random)
+	{
+		int tile;
+		do { tile = random.nextInt(TileCountFSA.TILES); }
+		while(wall.getSpecificValue(AvailableTilePattern.SINGLE, tile)==0);
+		return wall.remove(tile);
+	}
+}
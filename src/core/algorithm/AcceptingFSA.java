@@ -39,13 +39,16 @@
 
 package core.algorithm;
 
-import utilities.ArrayUtilities;
+import utilities.LRUCache;
 import core.algorithm.patterns.TilePattern;
 
 public class AcceptingFSA {
 	
 	public static boolean debug = false;
 	
+	// when set, full (ALL_MASK) parses are handed off to the tile count engine in TileCountFSA
+	public static boolean countvector = true;
+	
 	// pattern masks
 	public static final int EMPTY_MASK = 0;
 	public static final int SINGLES_MASK = 1;
@@ -60,6 +63,16 @@ public class AcceptingFSA {
 	public static final int WIN_MASK = 60; // PAIR_MASK | SET_MASK
 	public static final int ALL_MASK = 63; // SINGLES_MASK | CONNECTED_PAIR_MASK | PAIR_MASK | SET_MASK;
 	
+	// when set, the token string FSA drops patterns that are equal to one it has already found
+	public static boolean dedupe = true;
+
+	// parse results for recently seen hands. Cached patterns are never handed out or changed, only copied:
+	// their bins are marked shared and their dfsa lists are built before they are cached, so that a copy
+	// shares both with the cached pattern until it is changed (see TilePattern.share).
+	// The engine switches above are part of the cache key, so changing them never serves a parse from another engine.
+	public static boolean caching = true;
+	public static LRUCache<String,TilePattern[]> cache = new LRUCache<String,TilePattern[]>(1024);
+
 	// masking function
 	private static boolean masks(int mask, int target) { return (mask&target)==target; }
 	
@@ -77,7 +90,8 @@ public class AcceptingFSA {
 	}
 
 	/**
-	 * parses a TileTokenString for all masked combinations
+	 * parses a TileTokenString for all masked combinations. The token string itself is not iterated
+	 * over, whether the patterns come from the cache or not.
 	 * @param tiletokenstring representation of an n tile hand, using the tilenumbers from TilePattern
 	 * @param locked int[] array representing the face-up tiles
 	 * @param lockedsets int[] array representing which sets are face-up   
@@ -86,22 +100,67 @@ public class AcceptingFSA {
 	 */
 	public static TilePattern[] parse(TileTokenString tiletokenstring, int[] locked, int[] lockedsets, int MASK)
 	{
+		String key = null;
+		if(caching) {
+			key = cacheKey(tiletokenstring, locked, lockedsets, MASK);
+			TilePattern[] cached = cache.get(key);
+			if(cached!=null) { return copy(cached); }}
 		// first lock any patterns defined by the locked sequence
 		TilePattern lockedpattern = parseOpen(new TilePattern(), locked, lockedsets);
 		// then send off the data to the FSA body that should handle the variable part
-		return parseConcealed(lockedpattern, tiletokenstring, MASK);
+		TilePattern[] patterns = parseConcealed(lockedpattern, new TileTokenString(tiletokenstring), MASK);
+		if(caching) {
+			for(TilePattern cached: patterns) { cached.share().getDFSAlist(false); }
+			cache.put(key, patterns);
+			return copy(patterns); }
+		return patterns;
+	}
+
+	/**
+	 * builds the cache key for a parse: one char per tile count for the remaining concealed tiles,
+	 * followed by the mask, the engine switches, the locked tiles and the locked sets.
+	 */
+	private static String cacheKey(TileTokenString tiletokenstring, int[] locked, int[] lockedsets, int MASK)
+	{
+		int[] counts = tiletokenstring.getCounts();
+		char[] key = new char[counts.length + 2 + locked.length + 1 + lockedsets.length];
+		int pos = 0;
+		for(int count: counts) { key[pos++] = (char)count; }
+		key[pos++] = (char)MASK;
+		key[pos++] = (char)((countvector ? 1 : 0) | (dedupe ? 2 : 0));
+		for(int tile: locked) { key[pos++] = (char)tile; }
+		key[pos++] = (char)0xFFFF;
+		for(int set: lockedsets) { key[pos++] = (char)set; }
+		return new String(key);
+	}
+
+	/**
+	 * copies a list of cached patterns, so that callers are free to modify what they are handed. The
+	 * copies share the cached patterns' bins and dfsa lists, so this does not copy any tile counts.
+	 */
+	private static TilePattern[] copy(TilePattern[] patterns)
+	{
+		TilePattern[] copies = new TilePattern[patterns.length];
+		for(int p=0; p<patterns.length; p++) { copies[p] = new TilePattern(patterns[p]); }
+		return copies;
 	}
 	
 	/**
 	 * Thie method is the access point to generating all possible patterns based on "face down" in-hand tiles.
 	 * @param pattern an empty pattern, used as expansion basis
 	 * @param tiletokenstring a TileTokenString representation of the tiles in hand
+	 * @param MASK a bitmask (combinations of ..._MASK values) indicating which subsets are allowed in the parsed patterns
 	 * @return the set of all possible TilePatterns for the tiles defined by tiletokenstring
 	 */
 	public static TilePattern[] parseConcealed(TilePattern pattern, TileTokenString tiletokenstring, int MASK) {
 		if(debug) { System.out.println("tiletokestring: "+tiletokenstring); }
 		TilePattern[] patterns;
-		if (tiletokenstring.hasNext()) patterns = single(pattern, tiletokenstring.getNext(),tiletokenstring, MASK);
+		if (countvector && MASK==ALL_MASK && tiletokenstring.hasNext()) patterns = TileCountFSA.parse(pattern, tiletokenstring.getCounts());
+		else if (tiletokenstring.hasNext()) {
+			PatternSink sink = new PatternSink(dedupe);
+			single(sink, pattern, tiletokenstring.getNext(),tiletokenstring, MASK);
+			patterns = sink.toArray();
+			if(debug) { System.out.println(sink.getDuplicates()+" duplicate patterns removed"); }}
 		else {
 			patterns = new TilePattern[1];
 			patterns[0] = pattern; }
@@ -145,17 +204,15 @@ public class AcceptingFSA {
 
 	/**
 	 * This method handles the terminal clause, when no more tokens exist to pass through the FSA
-	 * @param pattern the final pattern to return
+	 * @param sink the sink that collects all finished patterns
+	 * @param pattern the final pattern to record
 	 * @param token the final token to add to the pattern
 	 * @param patterntype the final patterntype
-	 * @return the finalised TilePattern
 	 */
-	private static TilePattern[] tilepattern(TilePattern pattern, int token, int patterntype)
+	private static void tilepattern(PatternSink sink, TilePattern pattern, int token, int patterntype)
 	{
 		pattern.incrementTileAndPattern(token, patterntype);
-		TilePattern[] ret = new TilePattern[1];
-		ret[0] = pattern;
-		return ret;
+		sink.add(pattern);
 	}
 	
 	/**
@@ -165,45 +222,46 @@ public class AcceptingFSA {
 	 * - if next = token+1, send on to connected pair processing node
 	 * - if next = token check if there is a downstream pair possible and send on for processing; also send on for pair processing
 	 * - if neither, signal "single", update the recording pattern, and call self with next as token. 
+	 * @param sink			the sink that collects all TilePatterns that can be reached from here
 	 * @param pattern		The TilePattern seen so far
 	 * @param current			an interger representation of an MJ tile, according to the list in TilePattern
 	 * @param tokenstring	a TileTokenString representation of a hand, sorted in increasing tilenumber order
-	 * @return the set of TilePatterns that can be reached from here
 	 */
-	private static TilePattern[] single(TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
+	private static void single(PatternSink sink, TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
 		if(debug) System.out.println("Entering single with token ["+current+"]");
 		if(!tokenstring.hasNext()) { 
 			if(debug) System.out.println("terminated");
-			return tilepattern(pattern, current, TilePattern.SINGLE); }
+			tilepattern(sink, pattern, current, TilePattern.SINGLE); }
 		else
 		{
 			int next = tokenstring.getNext();
-			
-			// if the next is facenumber+1, branch for connected pair
-			TilePattern[] connectedpatterns = new TilePattern[0];
-			if(TilePattern.isNumberSequence(current,next)) {
-				connectedpatterns = connected(new TilePattern(pattern), next, new TileTokenString(tokenstring), MASK); }
-			
-			// chows may be 'distributed', so check if we can branch for downstream connected pair as well
-			TilePattern[] downstream_connectedpatterns = new TilePattern[0];
+
+			// results are recorded single-first, then pair, connected pair and downstream connected pair,
+			// so the branch patterns for the last three need to be copied before the single is recorded
+			TilePattern connectedpattern = null;
+			if(TilePattern.isNumberSequence(current,next)) { connectedpattern = new TilePattern(pattern.share()); }
+			TilePattern downstreampattern = null;
 			int connector_position = tokenstring.canConnect(current);
-			if(connector_position>0){
-					// rearrange token string to accomodate this tile pattern interpretation
-					TileTokenString swappedtokenstring = new TileTokenString(tokenstring);
-					int swapped = swappedtokenstring.swapForNext(connector_position);
-					downstream_connectedpatterns = connected(new TilePattern(pattern), swapped, swappedtokenstring, MASK); }
+			if(connector_position>0) { downstreampattern = new TilePattern(pattern.share()); }
+			TilePattern pairpattern = null;
+			if(current==next) { pairpattern = new TilePattern(pattern.share()); }
+
+			// branch for single first, simply because it makes debugging easier
+			pattern.incrementTileAndPattern(current, TilePattern.SINGLE);
+			if(masks(MASK,SINGLES_MASK)) single(sink, pattern, next, new TileTokenString(tokenstring), MASK);
 
 			// if the next tile is the same, branch for pair
-			TilePattern[] pairpatterns = new TilePattern[0]; 
-			if(current==next) { pairpatterns = pair(new TilePattern(pattern), next, new TileTokenString(tokenstring), MASK); }
+			if(pairpattern!=null) { pair(sink, pairpattern, next, new TileTokenString(tokenstring), MASK); }
 
-			// branch for single last, simply because it makes debugging easier
-			pattern.incrementTileAndPattern(current, TilePattern.SINGLE);
-			TilePattern[] more = new TilePattern[0];
-			if(masks(MASK,SINGLES_MASK)) more = single(pattern, next, new TileTokenString(tokenstring), MASK);
+			// if the next is facenumber+1, branch for connected pair
+			if(connectedpattern!=null) { connected(sink, connectedpattern, next, new TileTokenString(tokenstring), MASK); }
 
-			// merge results and return
-			return ArrayUtilities.mergeTilePatternArrays(more, pairpatterns, connectedpatterns, downstream_connectedpatterns);
+			// chows may be 'distributed', so check if we can branch for downstream connected pair as well
+			if(downstreampattern!=null) {
+					// rearrange token string to accomodate this tile pattern interpretation
+					TileTokenString swappedtokenstring = new TileTokenString(tokenstring);
+					int swapped = swappedtokenstring.swapForNext(connector_position);
+					connected(sink, downstreampattern, swapped, swappedtokenstring, MASK); }
 		}
 	}
 
@@ -214,41 +272,35 @@ public class AcceptingFSA {
 	 * - if next = token+1, send on to chow processing node
 	 * - if next = token, check if there is a downstream chow possible and send on for processing
 	 * - if neither, signal "connected pair", update the recording pattern, and call "single" with next as token. 
+	 * @param sink			the sink that collects all TilePatterns that can be reached from here
 	 * @param pattern		The TilePattern seen so far
 	 * @param current			an interger representation of an MJ tile, according to the list in TilePattern
 	 * @param tokenstring	a TileTokenString representation of a hand
-	 * @return the set of TilePatterns that can be reached from here
 	 */
-	private static TilePattern[] connected(TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
+	private static void connected(PatternSink sink, TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
 		if(debug) System.out.println("Entering connected with token ["+current+"]");
 		if(!tokenstring.hasNext()) {
 			if(debug) System.out.println("terminated");
-			return tilepattern(pattern, current-1, TilePattern.CONNECTED); }
+			tilepattern(sink, pattern, current-1, TilePattern.CONNECTED); }
 		else
 		{
 			int next = tokenstring.getNext();
 
 			// branch for chow
-			TilePattern[] chowpatterns = new TilePattern[0];
 			if(TilePattern.isNumberSequence(current,next)) {
-					chowpatterns = chow(new TilePattern(pattern), next, new TileTokenString(tokenstring), MASK); }
+					chow(sink, new TilePattern(pattern.share()), next, new TileTokenString(tokenstring), MASK); }
 
 			// chows may be 'distributed', so check if we can branch for downstream connected pair as well
-			TilePattern[] downstream_connectedpatterns = new TilePattern[0];
 			int connector_position = tokenstring.canConnect(current);
 			if(connector_position>0){
 					// rearrange token string to accomodate this tile pattern interpretation
 					TileTokenString swappedtokenstring = new TileTokenString(tokenstring);
 					int swapped = swappedtokenstring.swapForNext(connector_position);
-					downstream_connectedpatterns = chow(new TilePattern(pattern), swapped, swappedtokenstring, MASK); }
+					chow(sink, new TilePattern(pattern.share()), swapped, swappedtokenstring, MASK); }
 
 			// branch after recording as connected pair
 			pattern.incrementTileAndPattern(current-1, TilePattern.CONNECTED);
-			TilePattern[] more = new TilePattern[0];
-			if(masks(MASK,CONNECTED_PAIR_MASK)) { more = single(pattern, next, new TileTokenString(tokenstring), MASK); }
-	
-			// merge results and return
-			return ArrayUtilities.mergeTilePatternArrays(chowpatterns, downstream_connectedpatterns, more);
+			if(masks(MASK,CONNECTED_PAIR_MASK)) { single(sink, pattern, next, tokenstring, MASK); }
 		}
 	}
 
@@ -258,58 +310,49 @@ public class AcceptingFSA {
 	 * - look at next token
 	 * - if next = token, send on to pung processing
 	 * - if not, signal "pair", update the recording pattern, and call "single" with next as token. 
+	 * @param sink			the sink that collects all TilePatterns that can be reached from here
 	 * @param pattern		The TilePattern seen so far
 	 * @param current			an interger representation of an MJ tile, according to the list in TilePattern
 	 * @param tokenstring	a TileTokenString representation of a hand
-	 * @return the set of TilePatterns that can be reached from here
 	 */
-	private static TilePattern[] pair(TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
+	private static void pair(PatternSink sink, TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
 		if(debug) System.out.println("Entering pair with token ["+current+"]");
 		if(!tokenstring.hasNext()) {
 			if(debug) System.out.println("terminated");
-			return tilepattern(pattern, current, TilePattern.PAIR); }
+			tilepattern(sink, pattern, current, TilePattern.PAIR); }
 		else
 		{
 			int next = tokenstring.getNext();
 
 			// branch for pung
-			TilePattern[] pungpatterns = new TilePattern[0]; 
-			if(next==current) { pungpatterns = pung(new TilePattern(pattern), next, new TileTokenString(tokenstring), MASK); }
+			if(next==current) { pung(sink, new TilePattern(pattern.share()), next, new TileTokenString(tokenstring), MASK); }
 
 			// branch after recording as pair
 			pattern.incrementTileAndPattern(current, TilePattern.PAIR);
-			TilePattern[] more = new TilePattern[0];
-			if(masks(MASK,PAIR_MASK)) { more = single(pattern, next, new TileTokenString(tokenstring), MASK); }
-	
-			// merge results and return
-			return ArrayUtilities.mergeTilePatternArrays(pungpatterns, more);
+			if(masks(MASK,PAIR_MASK)) { single(sink, pattern, next, tokenstring, MASK); }
 		}
 	}
 
 	/**
 	 * processing of chows: 
 	 * - signal "chow", update the recording pattern, and call "single" with next as token. 
+	 * @param sink			the sink that collects all TilePatterns that can be reached from here
 	 * @param pattern		The TilePattern seen so far
 	 * @param current			an interger representation of an MJ tile, according to the list in TilePattern
 	 * @param tokenstring	a TileTokenString representation of a hand
-	 * @return the set of TilePatterns that can be reached from here
 	 */
-	private static TilePattern[] chow(TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
+	private static void chow(PatternSink sink, TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
 		if(debug) System.out.println("Entering chow with token ["+current+"]");
 		if(!tokenstring.hasNext()) {
 			if(debug) System.out.println("terminated");
-			return tilepattern(pattern, current-2, TilePattern.CHOW); }
+			tilepattern(sink, pattern, current-2, TilePattern.CHOW); }
 		else
 		{
 			int next = tokenstring.getNext();
 
 			// branch after recording as chow
 			pattern.incrementTileAndPattern(current-2, TilePattern.CHOW);
-			TilePattern[] more = new TilePattern[0];
-			if(masks(MASK,CHOW_MASK)) { more = single(pattern, next, new TileTokenString(tokenstring), MASK); }
-
-			// merge results and return
-			return more;
+			if(masks(MASK,CHOW_MASK)) { single(sink, pattern, next, tokenstring, MASK); }
 		}
 	}
 
@@ -319,58 +362,49 @@ public class AcceptingFSA {
 	 * - look at next token
 	 * - if next = token, send on to kong processing
 	 * - if not, signal "pung", update the recording pattern, and call "single" with next as token. 
+	 * @param sink			the sink that collects all TilePatterns that can be reached from here
 	 * @param pattern		The TilePattern seen so far
 	 * @param current			an interger representation of an MJ tile, according to the list in TilePattern
 	 * @param tokenstring	a TileTokenString representation of a hand
-	 * @return the set of TilePatterns that can be reached from here
 	 */
-	private static TilePattern[] pung(TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
+	private static void pung(PatternSink sink, TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
 		if(debug) System.out.println("Entering pung with token ["+current+"]");
 		if(!tokenstring.hasNext()) {
 			if(debug) System.out.println("terminated");
-			return tilepattern(pattern, current, TilePattern.PUNG); }
+			tilepattern(sink, pattern, current, TilePattern.PUNG); }
 		else
 		{
 			int next = tokenstring.getNext();
 
 			// branch for kong
-			TilePattern[] kongpatterns = new TilePattern[0]; 
-			if(next==current) { kongpatterns = kong(new TilePattern(pattern), next, new TileTokenString(tokenstring), MASK); }
+			if(next==current) { kong(sink, new TilePattern(pattern.share()), next, new TileTokenString(tokenstring), MASK); }
 
 			// branch after recording as pung
 			pattern.incrementTileAndPattern(current, TilePattern.PUNG);
-			TilePattern[] more = new TilePattern[0];
-			if(masks(MASK,PUNG_MASK)) { more = single(pattern, next, new TileTokenString(tokenstring), MASK); }
-			
-			// merge results and return
-			return ArrayUtilities.mergeTilePatternArrays(kongpatterns, more);
+			if(masks(MASK,PUNG_MASK)) { single(sink, pattern, next, tokenstring, MASK); }
 		}
 	}
 
 	/**
 	 * processing of kongs: 
 	 * - signal "kong", update the recording pattern, and call "single" with next as token. 
+	 * @param sink			the sink that collects all TilePatterns that can be reached from here
 	 * @param pattern		The TilePattern seen so far
 	 * @param current			an interger representation of an MJ tile, according to the list in TilePattern
 	 * @param tokenstring	a TileTokenString representation of a hand
-	 * @return the set of TilePatterns that can be reached from here
 	 */
-	private static TilePattern[] kong(TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
+	private static void kong(PatternSink sink, TilePattern pattern, int current, TileTokenString tokenstring, int MASK){
 		if(debug) System.out.println("Entering kong with token ["+current+"]");
 		if(!tokenstring.hasNext()) {
 			if(debug) System.out.println("terminated");
-			return tilepattern(pattern, current, TilePattern.KONG); }
+			tilepattern(sink, pattern, current, TilePattern.KONG); }
 		else
 		{
 			int next = tokenstring.getNext();
 
 			// branch after recording as kong
 			pattern.incrementTileAndPattern(current, TilePattern.KONG);
-			TilePattern[] more = new TilePattern[0];
-			if(masks(MASK,KONG_MASK)) { more = single(pattern, next, new TileTokenString(tokenstring), MASK); }
-	
-			// return results
-			return more;
+			if(masks(MASK,KONG_MASK)) { single(sink, pattern, next, tokenstring, MASK); }
 		}
 	}
 }
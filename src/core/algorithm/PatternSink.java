@@ -0,0 +1,119 @@
+/**
+ * A growable collector for the TilePatterns that the parsing FSAs find. Finished patterns
+ * are appended to a single backing array, which doubles in size when it runs out of room,
+ * so the recursion never has to build and merge result arrays of its own.
+ *
+ * A sink can optionally drop patterns that are equal (same generic and specific bins) to
+ * a pattern it already holds. Membership is tracked with an open addressing hash table
+ * (linear probing) of indices into the backing array, which is kept at most half full.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm;
+
+import core.algorithm.patterns.TilePattern;
+
+public class PatternSink {
+	private TilePattern[] patterns;
+	private int size = 0;
+
+	// deduplication administration
+	private boolean dedupe;
+	private int[] hashes;
+	private int[] table;
+	private int duplicates = 0;
+
+	/**
+	 * set up an empty sink that keeps every pattern it is handed
+	 */
+	public PatternSink() { this(false); }
+
+	/**
+	 * set up an empty sink
+	 * @param dedupe whether patterns equal to an already collected pattern should be dropped
+	 */
+	public PatternSink(boolean dedupe) {
+		patterns = new TilePattern[16];
+		this.dedupe = dedupe;
+		if(dedupe) {
+			hashes = new int[16];
+			table = emptyTable(32); }}
+
+	/**
+	 * append a finished pattern
+	 * @param pattern
+	 * @return false if the pattern was dropped as a duplicate, true otherwise
+	 */
+	public boolean add(TilePattern pattern) {
+		int hash = 0;
+		if(dedupe) {
+			hash = pattern.hashCode();
+			int slot = find(pattern, hash);
+			if(table[slot]!=-1) { duplicates++; return false; }
+			table[slot] = size; }
+		if(size==patterns.length) {
+			TilePattern[] grown = new TilePattern[patterns.length*2];
+			System.arraycopy(patterns, 0, grown, 0, size);
+			patterns = grown;
+			if(dedupe) {
+				int[] grownhashes = new int[grown.length];
+				System.arraycopy(hashes, 0, grownhashes, 0, size);
+				hashes = grownhashes; }}
+		if(dedupe) {
+			hashes[size] = hash;
+			if(2*(size+1)>table.length) { rehash(); }}
+		patterns[size++] = pattern;
+		return true; }
+
+	// number of patterns collected so far
+	public int size() { return size; }
+
+	// number of patterns that were dropped for being duplicates
+	public int getDuplicates() { return duplicates; }
+
+	/**
+	 * @return a right-sized array with all collected patterns, in the order they were added
+	 */
+	public TilePattern[] toArray() {
+		TilePattern[] ret = new TilePattern[size];
+		System.arraycopy(patterns, 0, ret, 0, size);
+		return ret; }
+
+	/**
+	 * find the table slot that holds an equal pattern, or the empty slot where it would go
+	 */
+	private int find(TilePattern pattern, int hash) {
+		int mask = table.length-1;
+		int slot = spread(hash) & mask;
+		while(table[slot]!=-1) {
+			int index = table[slot];
+			if(hashes[index]==hash && patterns[index].equals(pattern)) { break; }
+			slot = (slot+1) & mask; }
+		return slot; }
+
+	/**
+	 * double the table size and reinsert all indices; this happens before the pattern that
+	 * triggered it is stored, so the current size is still one short of the final count
+	 */
+	private void rehash() {
+		table = emptyTable(table.length*2);
+		int mask = table.length-1;
+		for(int index=0; index<=size; index++) {
+			int slot = spread(hashes[index]) & mask;
+			while(table[slot]!=-1) { slot = (slot+1) & mask; }
+			table[slot] = index; }}
+
+	// mix the high bits of the hash into the low bits, since the table is indexed by the low bits
+	private static int spread(int hash) { return hash ^ (hash>>>16); }
+
+	private static int[] emptyTable(int length) {
+		int[] empty = new int[length];
+		for(int i=0; i<length; i++) { empty[i] = -1; }
+		return empty; }
+}
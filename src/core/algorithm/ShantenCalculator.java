@@ -0,0 +1,212 @@
+/**
+ * This class computes how far a hand is from being ready ("shanten" number) for the
+ * standard winning form of four sets plus a pair:
+ *
+ *   -1  the hand is complete
+ *    0  the hand is ready: one more tile completes it
+ *    n  at least n tile swaps are needed before the hand is ready
+ *
+ * For a hand with k open sets the number is
+ *
+ *   2*(4-k) - 2*sets - partials - pair
+ *
+ * where sets are the complete concealed sets, partials are pairs and (gapped) connected
+ * pairs that need one more tile, at most 4-k sets and partials are counted together, and
+ * pair is 1 if one of the pairs is set aside as the hand's pair.
+ *
+ * Sets and partials never span suits, so every suit is looked at separately: for each
+ * suit count code (see WinningHandTable.encode) a table entry records, with and without
+ * a pair set aside, the largest number of partials that can go along with each number of
+ * sets. Entries are computed the first time a code is seen, and the most recently used
+ * ones are kept. A hand is then scored by combining the (at most) four entries for its suits.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm;
+
+import utilities.LRUCache;
+import core.algorithm.patterns.TilePattern;
+
+public class ShantenCalculator {
+
+	public static boolean debug = false;
+
+	// the standard form: four sets and a pair
+	public static final int SETS = 4;
+	public static final int COMPLETE = -1;
+	public static final int READY = 0;
+
+	// an entry value for combinations that cannot be made
+	private static final int NONE = -1;
+
+	// known suit entries, one table for the numbered suits and one for the honours
+	public static int SUITCACHESIZE = 4096;
+	private static LRUCache<Integer,int[][]> numbered = new LRUCache<Integer,int[][]>(SUITCACHESIZE);
+	private static LRUCache<Integer,int[][]> honours = new LRUCache<Integer,int[][]>(SUITCACHESIZE);
+
+	/**
+	 * computes the shanten number for a set of concealed tiles and open sets
+	 * @param concealed int[] array of concealed tile numbers
+	 * @param sets int[] array with how the open tiles are arranged
+	 * @return the shanten number
+	 */
+	public static int shanten(int[] concealed, int[] sets) {
+		return shanten(TileCountFSA.histogram(concealed), countOpenSets(sets)); }
+
+	/**
+	 * computes the shanten number for a tile count histogram
+	 * @param counts tile count histogram, as made by TileCountFSA.histogram
+	 * @param opensets the number of sets that are already open
+	 * @return the shanten number
+	 */
+	public static int shanten(int[] counts, int opensets) {
+		int needed = Math.max(0, SETS-opensets);
+		// best[pair][sets] = most partials possible with that pair use and number of sets, so far
+		int[][] best = {{0, NONE, NONE, NONE, NONE}, {NONE, NONE, NONE, NONE, NONE}};
+		for(int suit=0; suit<WinningHandTable.SUITS; suit++) {
+			int code = WinningHandTable.encode(counts, suit);
+			if(code==-1) { code = WinningHandTable.encode(cap(counts, suit), suit); }
+			int[][] entry = getEntry(suit, code);
+			int[][] combined = {{NONE, NONE, NONE, NONE, NONE}, {NONE, NONE, NONE, NONE, NONE}};
+			for(int p1=0; p1<2; p1++) { for(int s1=0; s1<=SETS; s1++) {
+				if(best[p1][s1]==NONE) continue;
+				for(int p2=0; p1+p2<2; p2++) { for(int s2=0; s2<=SETS; s2++) {
+					if(entry[p2][s2]==NONE) continue;
+					int s = Math.min(SETS, s1+s2);
+					int partials = best[p1][s1] + entry[p2][s2];
+					if(partials>combined[p1+p2][s]) { combined[p1+p2][s] = partials; }}}}}
+			best = combined; }
+
+		int shanten = 2*needed;
+		for(int pair=0; pair<2; pair++) { for(int s=0; s<=SETS; s++) {
+			if(best[pair][s]==NONE) continue;
+			int sets = Math.min(s, needed);
+			int partials = Math.min(best[pair][s], needed-sets);
+			int value = 2*needed - 2*sets - partials - pair;
+			if(value<shanten) { shanten = value; }}}
+		return shanten; }
+
+	/**
+	 * determines which tiles can be discarded while keeping the shanten number as low as possible
+	 * @param concealed int[] array of concealed tile numbers
+	 * @param sets int[] array with how the open tiles are arranged
+	 * @return int[] array of distinct tile numbers, in increasing order, that are the best discards
+	 */
+	public static int[] bestDiscards(int[] concealed, int[] sets) {
+		int[] counts = TileCountFSA.histogram(concealed);
+		int opensets = countOpenSets(sets);
+		int[] discards = new int[TileCountFSA.TILES];
+		int found = 0;
+		int min = Integer.MAX_VALUE;
+		for(int tile=0; tile<TileCountFSA.TILES; tile++) {
+			if(counts[tile]==0) continue;
+			counts[tile]--;
+			int value = shanten(counts, opensets);
+			counts[tile]++;
+			if(value<min) { min = value; found = 0; }
+			if(value==min) { discards[found++] = tile; }}
+		int[] ret = new int[found];
+		System.arraycopy(discards, 0, ret, 0, found);
+		return ret; }
+
+	/**
+	 * the shanten number that remains after the best discard
+	 * @param concealed int[] array of concealed tile numbers
+	 * @param sets int[] array with how the open tiles are arranged
+	 * @return the shanten number after discarding any of the tiles from bestDiscards
+	 */
+	public static int shantenAfterDiscard(int[] concealed, int[] sets) {
+		int[] counts = TileCountFSA.histogram(concealed);
+		int opensets = countOpenSets(sets);
+		int min = Integer.MAX_VALUE;
+		for(int tile=0; tile<TileCountFSA.TILES; tile++) {
+			if(counts[tile]==0) continue;
+			counts[tile]--;
+			min = Math.min(min, shanten(counts, opensets));
+			counts[tile]++; }
+		return min; }
+
+	/**
+	 * number of known suit entries
+	 */
+	public static int size() { return numbered.size() + honours.size(); }
+
+	// open sets that count towards the four sets
+	private static int countOpenSets(int[] sets) {
+		int opensets = 0;
+		for(int set: sets) { if(set>TilePattern.PAIR) opensets++; }
+		return opensets; }
+
+	// more than four of a tile can't come up in play; the extras can't help the hand anyway
+	private static int[] cap(int[] counts, int suit) {
+		int[] capped = counts.clone();
+		for(int t=0; t<WinningHandTable.SUIT_LENGTH[suit]; t++) {
+			int tile = WinningHandTable.SUIT_START[suit]+t;
+			capped[tile] = Math.min(4, capped[tile]); }
+		return capped; }
+
+	/**
+	 * get the entry for a suit's count code, computing it if it's not known yet
+	 * @return int[pair][sets] array with the most partials possible, or -1 if the combination can't be made
+	 */
+	private static int[][] getEntry(int suit, int code) {
+		LRUCache<Integer,int[][]> table = (suit<3) ? numbered : honours;
+		int[][] entry = table.get(code);
+		if(entry==null) {
+			int length = WinningHandTable.SUIT_LENGTH[suit];
+			int[] counts = new int[length];
+			for(int t=0, c=code; t<length; t++, c/=5) { counts[t] = c%5; }
+			entry = new int[][] {{NONE, NONE, NONE, NONE, NONE}, {NONE, NONE, NONE, NONE, NONE}};
+			search(counts, suit<3, 0, 0, 0, 0, entry);
+			table.put(code, entry); }
+		return entry; }
+
+	/**
+	 * walks through every way of taking sets, partials and a pair off the lowest remaining tile
+	 * of a suit, recording the most partials found for each pair use and number of sets
+	 */
+	private static void search(int[] counts, boolean numbered, int tile, int pair, int sets, int partials, int[][] entry) {
+		while(tile<counts.length && counts[tile]==0) { tile++; }
+		if(tile==counts.length) {
+			int s = Math.min(SETS, sets);
+			if(partials>entry[pair][s]) { entry[pair][s] = partials; }
+			return; }
+
+		boolean next = numbered && tile+1<counts.length && counts[tile+1]>0;
+		boolean gapped = numbered && tile+2<counts.length && counts[tile+2]>0;
+
+		// sets
+		if(counts[tile]>=3) {
+			counts[tile] -= 3;
+			search(counts, numbered, tile, pair, sets+1, partials, entry);
+			counts[tile] += 3; }
+		if(next && gapped) {
+			counts[tile]--; counts[tile+1]--; counts[tile+2]--;
+			search(counts, numbered, tile, pair, sets+1, partials, entry);
+			counts[tile]++; counts[tile+1]++; counts[tile+2]++; }
+		// the pair, or a pair as a partial
+		if(counts[tile]>=2) {
+			counts[tile] -= 2;
+			if(pair==0) { search(counts, numbered, tile, 1, sets, partials, entry); }
+			search(counts, numbered, tile, pair, sets, partials+1, entry);
+			counts[tile] += 2; }
+		// connected and gapped partials
+		if(next) {
+			counts[tile]--; counts[tile+1]--;
+			search(counts, numbered, tile, pair, sets, partials+1, entry);
+			counts[tile]++; counts[tile+1]++; }
+		if(gapped) {
+			counts[tile]--; counts[tile+2]--;
+			search(counts, numbered, tile, pair, sets, partials+1, entry);
+			counts[tile]++; counts[tile+2]++; }
+		// or leave the tile as an isolated single
+		counts[tile]--;
+		search(counts, numbered, tile, pair, sets, partials, entry);
+		counts[tile]++; }
+}
@@ -0,0 +1,142 @@
+/**
+ * This class performs the same combinatorial parse as the AcceptingFSA, but rather than
+ * walking a sorted TileTokenString it works on a tile count histogram:
+ *
+ *   counts[tile] = number of copies of that tile in hand
+ *
+ * The lowest tile that still has a nonzero count must be the lowest tile of whatever
+ * set it ends up in, so at every step there are at most six options for it: single,
+ * connected pair, pair, chow, pung or kong. These are tried by decrementing the counts
+ * in place, recursing, and incrementing them again, so no token strings or intermediate
+ * patterns are copied along the way. Because the tiles are consumed in increasing order,
+ * the search runs through the bamboo, characters, dots and honours suits one after the
+ * other.
+ *
+ * Sets that start on the same tile are only ever generated in non-increasing set order
+ * (kong, pung, chow, pair, connected pair, single), which means every division of the
+ * hand is found exactly once, rather than once for every order in which its sets can
+ * be picked off.
+ *
+ * The resulting TilePatterns cover the same set of divisions that AcceptingFSA.parse
+ * yields for ALL_MASK.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm;
+
+import core.algorithm.patterns.TilePattern;
+
+public class TileCountFSA {
+
+	public static boolean debug = false;
+
+	// number of distinct non-bonus tiles
+	public static final int TILES = TilePattern.specificnames.length;
+
+	/**
+	 * builds a tile count histogram for an array of tile numbers
+	 * @param tiles int[] array of tile numbers, as defined in TilePattern
+	 * @return int[] array where each position holds the number of copies of that tile
+	 */
+	public static int[] histogram(int[] tiles) {
+		int[] counts = new int[TILES];
+		for(int tile: tiles) { counts[tile]++; }
+		return counts; }
+
+	/**
+	 * parses a tile count histogram for all possible valid combinations
+	 * of singles, connected pairs, pairs, chows, pungs and kongs.
+	 * @param pattern the pattern to use as expansion basis (typically the locked pattern); it is not modified
+	 * @param counts the tile count histogram; it is restored to its original content before returning
+	 * @return the set of all possible TilePatterns for the tiles in counts
+	 */
+	public static TilePattern[] parse(TilePattern pattern, int[] counts) {
+		int tilecount = 0;
+		for(int count: counts) { tilecount += count; }
+		Search search = new Search(pattern, counts, tilecount);
+		search.next(0, TilePattern.KONG);
+		TilePattern[] patterns = search.sink.toArray();
+		if(debug) { System.out.println(patterns.length+" patterns found for "+tilecount+" tiles"); }
+		return patterns; }
+
+	/**
+	 * the actual search state: the histogram being consumed, and a stack of the sets
+	 * picked off so far, as (tile, set type) pairs.
+	 */
+	private static class Search
+	{
+		private TilePattern basis;
+		private int[] counts;
+		private int[] settiles;
+		private int[] settypes;
+		private int depth = 0;
+		private PatternSink sink = new PatternSink();
+
+		private Search(TilePattern basis, int[] counts, int tilecount) {
+			// a shared copy, so that every recorded pattern can start out from its bins without copying them
+			this.basis = new TilePattern(basis).share();
+			this.counts = counts;
+			// every set uses at least one tile
+			settiles = new int[tilecount];
+			settypes = new int[tilecount]; }
+
+		/**
+		 * find the lowest tile that is still in hand, and try every set it can be the start of
+		 * @param tile the position to start looking from
+		 * @param maxtype the highest set type that may still be started on this tile
+		 */
+		private void next(int tile, int maxtype) {
+			while(tile<TILES && counts[tile]==0) { tile++; maxtype = TilePattern.KONG; }
+			if(tile==TILES) { record(); return; }
+
+			int count = counts[tile];
+			boolean connects = tile+1<TILES && counts[tile+1]>0 && TilePattern.isNumberSequence(tile, tile+1);
+			boolean chows = connects && tile+2<TILES && counts[tile+2]>0 && TilePattern.isNumberSequence(tile+1, tile+2);
+
+			if(maxtype>=TilePattern.KONG && count>=4) { take(tile, TilePattern.KONG, 4); }
+			if(maxtype>=TilePattern.PUNG && count>=3) { take(tile, TilePattern.PUNG, 3); }
+			if(maxtype>=TilePattern.CHOW && chows) {
+				counts[tile]--; counts[tile+1]--; counts[tile+2]--;
+				push(tile, TilePattern.CHOW);
+				next(tile, TilePattern.CHOW);
+				depth--;
+				counts[tile]++; counts[tile+1]++; counts[tile+2]++; }
+			if(maxtype>=TilePattern.PAIR && count>=2) { take(tile, TilePattern.PAIR, 2); }
+			if(maxtype>=TilePattern.CONNECTED && connects) {
+				counts[tile]--; counts[tile+1]--;
+				push(tile, TilePattern.CONNECTED);
+				next(tile, TilePattern.CONNECTED);
+				depth--;
+				counts[tile]++; counts[tile+1]++; }
+			take(tile, TilePattern.SINGLE, 1); }
+
+		/**
+		 * take a number of identical tiles off the histogram as a single set, and recurse
+		 */
+		private void take(int tile, int type, int number) {
+			counts[tile] -= number;
+			push(tile, type);
+			next(tile, type);
+			depth--;
+			counts[tile] += number; }
+
+		private void push(int tile, int type) {
+			settiles[depth] = tile;
+			settypes[depth] = type;
+			depth++; }
+
+		/**
+		 * the histogram has been fully consumed, turn the set stack into a TilePattern
+		 */
+		private void record() {
+			TilePattern pattern = new TilePattern(basis);
+			for(int s=0; s<depth; s++) { pattern.incrementTileAndPattern(settiles[s], settypes[s]); }
+			sink.add(pattern); }
+	}
+}
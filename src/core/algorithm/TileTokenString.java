@@ -48,6 +48,12 @@ public class TileTokenString {
 	// look ahead into the token string. If we look ahead to much, we "fail" and return -1
 	public int lookAtNext(int howmuch) { howmuch--; if (position+howmuch>tokens.length-1) { return -1; } else { return tokens[position+howmuch]; } }
 
+	// tile count histogram of the tokens that have not been iterated over yet
+	public int[] getCounts() {
+		int[] counts = new int[TileCountFSA.TILES];
+		for(int p = position; p<tokens.length;p++) { counts[tokens[p]]++; }
+		return counts; }
+
 	// special functions to see if chows can be formed further down
 	public int canConnect(int token) { 
 		for(int p = position; p<tokens.length;p++) {
@@ -0,0 +1,169 @@
+/**
+ * This class decides whether a hand is complete, i.e. whether all of its tiles can be
+ * divided into sets (chows, pungs and kongs) plus exactly one pair, without having
+ * to enumerate every possible division of the hand.
+ *
+ * Because sets never span more than one suit, each suit can be judged on its own. For
+ * every possible count vector of a suit (9 counts for bamboo, characters and dots, 7 for
+ * the honours) a lookup table records whether those tiles form only sets, and whether
+ * they form sets plus one pair. The count vectors are encoded as base 5 numbers:
+ *
+ *   code = counts[0] + 5*counts[1] + 25*counts[2] + ...
+ *
+ * The tables are generated once, the first time they are needed, by building every
+ * combination of sets that fits in a suit, rather than by testing every code.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm;
+
+import utilities.ArrayUtilities;
+import core.algorithm.patterns.TilePattern;
+
+public class WinningHandTable {
+
+	public static boolean debug = false;
+
+	// table flags
+	public static final byte SETS = 1;			// the tiles divide into sets only
+	public static final byte SETS_AND_PAIR = 2;	// the tiles divide into sets and one pair
+
+	// suit layout
+	public static final int SUITS = 4;
+	public static final int[] SUIT_START = {TilePattern.BAMBOO_ONE, TilePattern.CHARACTER_ONE, TilePattern.DOT_ONE, TilePattern.HONOURS};
+	public static final int[] SUIT_LENGTH = {9, 9, 9, 7};
+
+	// powers of five, for encoding count vectors
+	private static final int[] POWERS = {1, 5, 25, 125, 625, 3125, 15625, 78125, 390625, 1953125};
+
+	// one table is shared by the three numbered suits, the honours have their own
+	private static byte[] numbered;
+	private static byte[] honours;
+
+	/**
+	 * get the lookup table for a suit, generating it if this has not happened yet
+	 * @param suit 0-2 for the numbered suits, 3 for the honours
+	 * @return byte[] table of SETS/SETS_AND_PAIR flags, indexed by count vector code
+	 */
+	public static synchronized byte[] getTable(int suit) {
+		if(suit<3) {
+			if(numbered==null) { numbered = generate(9, true); }
+			return numbered; }
+		if(honours==null) { honours = generate(7, false); }
+		return honours; }
+
+	/**
+	 * encode the counts for one suit of a tile count histogram
+	 * @param counts tile count histogram, as made by TileCountFSA.histogram
+	 * @param suit 0-2 for the numbered suits, 3 for the honours
+	 * @return the base 5 code for this suit, or -1 if any tile count is over 4
+	 */
+	public static int encode(int[] counts, int suit) {
+		int code = 0;
+		int start = SUIT_START[suit];
+		for(int t=SUIT_LENGTH[suit]-1; t>=0; t--) {
+			int count = counts[start+t];
+			if(count>4) return -1;
+			code = 5*code + count; }
+		return code; }
+
+	/**
+	 * checks whether a tile count histogram divides into sets plus a given number of pairs
+	 * @param counts tile count histogram, as made by TileCountFSA.histogram
+	 * @param pairs the number of pairs the division must contain: 0 or 1
+	 * @return true if such a division exists
+	 */
+	public static boolean isComplete(int[] counts, int pairs) {
+		if(pairs<0 || pairs>1) return false;
+		int missing = -1;
+		boolean pairpossible = false;
+		for(int suit=0; suit<SUITS; suit++) {
+			int code = encode(counts, suit);
+			if(code==-1) return false;
+			byte flags = getTable(suit)[code];
+			if((flags&SETS_AND_PAIR)!=0) { pairpossible = true; }
+			if((flags&SETS)==0) {
+				// at most one suit can get away with not being all sets, and only if it holds the pair
+				if(pairs==0 || missing!=-1 || (flags&SETS_AND_PAIR)==0) return false;
+				missing = suit; }}
+		if(pairs==0) return true;
+		return missing!=-1 || pairpossible; }
+
+	/**
+	 * checks whether a hand is complete: the concealed tiles and the open sets together
+	 * have to consist of sets and exactly one pair.
+	 * @param concealed int[] array of concealed tile numbers
+	 * @param sets int[] array with how the open tiles are arranged
+	 * @return true if this is a complete hand
+	 */
+	public static boolean isWinningHand(int[] concealed, int[] sets) {
+		int pairs = 1;
+		for(int set: sets) {
+			switch(set) {
+				case(TilePattern.PAIR): { pairs--; break; }
+				case(TilePattern.CHOW):
+				case(TilePattern.PUNG):
+				case(TilePattern.KONG):
+				case(TilePattern.CONCEALED_KONG): { break; }
+				default: { return false; }}}
+		int[] counts = new int[TileCountFSA.TILES];
+		for(int tile: concealed) {
+			if(tile<0 || tile>=TileCountFSA.TILES) return false;
+			counts[tile]++; }
+		boolean complete = isComplete(counts, pairs);
+		if(debug) { System.out.println("hand "+ArrayUtilities.arrayToString(concealed)+" complete: "+complete); }
+		return complete; }
+
+	/**
+	 * builds the table for a suit of a given length
+	 * @param length number of distinct tiles in the suit
+	 * @param chows whether chows can be formed in this suit
+	 */
+	private static byte[] generate(int length, boolean chows) {
+		long millis = System.currentTimeMillis();
+		byte[] table = new byte[POWERS[length]];
+		int[] counts = new int[length];
+		addSets(table, counts, chows, 0, 0);
+		// every sets-only code with room for two more of some tile yields a sets-and-pair code
+		for(int code=0; code<table.length; code++) {
+			if((table[code]&SETS)==0) continue;
+			for(int t=0; t<length; t++) {
+				if((code/POWERS[t])%5<=2) { table[code+2*POWERS[t]] |= SETS_AND_PAIR; }}}
+		if(debug) { System.out.println("generated "+length+" tile suit table in "+(System.currentTimeMillis()-millis)+"ms"); }
+		return table; }
+
+	/**
+	 * marks the current counts as divisible into sets, then tries adding every set at or after
+	 * the given set index. Sets are indexed as pungs (0..length-1), kongs (length..2*length-1),
+	 * and chows (2*length and up), and only ever added in non-decreasing index order.
+	 */
+	private static void addSets(byte[] table, int[] counts, boolean chows, int first, int code) {
+		table[code] |= SETS;
+		int length = counts.length;
+		int sets = 2*length + (chows ? length-2 : 0);
+		for(int set=first; set<sets; set++) {
+			if(set<length) {
+				int t = set;
+				if(counts[t]>1) continue;
+				counts[t] += 3;
+				addSets(table, counts, chows, set, code + 3*POWERS[t]);
+				counts[t] -= 3; }
+			else if(set<2*length) {
+				int t = set-length;
+				if(counts[t]>0) continue;
+				counts[t] += 4;
+				addSets(table, counts, chows, set, code + 4*POWERS[t]);
+				counts[t] -= 4; }
+			else {
+				int t = set-2*length;
+				if(counts[t]>3 || counts[t+1]>3 || counts[t+2]>3) continue;
+				counts[t]++; counts[t+1]++; counts[t+2]++;
+				addSets(table, counts, chows, set, code + POWERS[t] + POWERS[t+1] + POWERS[t+2]);
+				counts[t]--; counts[t+1]--; counts[t+2]--; }}}
+}
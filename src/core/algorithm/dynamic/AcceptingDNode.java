@@ -11,17 +11,22 @@ public class AcceptingDNode extends DNode {
 	 */
 	public boolean hookUp(DNode[] nodes) { return true; }
 	
+	/**
+	 * the accepting node has no outgoing paths, so there is nothing to compile
+	 */
+	public void compile() {}
+	
 	/**
 	 * accepting node: returns true
 	 * @return true
 	 */
-	public boolean parse(int[][] list, int windoftheround, int playerwind) { return true; }
+	public boolean parse(int[][] list, int offset, int windoftheround, int playerwind) { return true; }
 
 	/**
 	 * accepting node: returns true
 	 * @return true
 	 */
-	public int parseValue(int[][] list, int value, PointBreakdownObject points, int windoftheround, int playerwind) {  return value; }
+	public int parseValue(int[][] list, int offset, int value, PointBreakdownObject points, int windoftheround, int playerwind) {  return value; }
 
 	/**
 	 * tostring
@@ -1,7 +1,5 @@
 package core.algorithm.dynamic;
 
-import java.util.Hashtable;
-
 import utilities.ArrayUtilities;
 
 import core.algorithm.patterns.TilePattern;
@@ -84,13 +82,35 @@ public class ConditionalPath
 	public static String getConditionalSuit(int suitid) { return suits[suitid]; }
 	
 	private final static int[] EMPTYLIST = new int[0];
+
+	// the rewritten conditional for every set, set/type and set/type/suit combination, shared by
+	// all paths and built the first time it is needed. Entries must not be modified.
+	private static int[][] registry;
 	
 	private int[] conditional;
 	private String target;
 	private DNode targetnode;
 	private int pathvalue = 0;
 	private int concealedpathvalue = 0;
-	private Hashtable<String,int[]> lookuptable;
+
+	// matching through the compiled predicate rather than by name; can be switched off for comparison
+	public static boolean precompiled = true;
+
+	// the compiled predicate, see compile()
+	private boolean compiled = false;
+	private boolean byname = false;
+	private int markermask = 0;
+	private long[] tilemasks = new long[KONG+1];
+	private int windselector = ANY;
+	private long kindmask = 0;
+
+	// set kinds: a set's category (SINGLE through KONG) combined with the class of its first tile,
+	// being terminal or simple for each numbered suit, wind, dragon, flower or season
+	public final static int TILECLASSES = 10;
+	public final static int KINDS = KONG*TILECLASSES;
+	public final static long ALLKINDS = (1L<<KINDS)-1;
+	// stands for anything in a dfsa list that is not a set of any kind
+	public final static long UNKNOWNKIND = 1L<<63;
 	
 	/**
 	 * 
@@ -100,13 +120,6 @@ public class ConditionalPath
 	public ConditionalPath(int[] conditional, String target) {
 		this.conditional = conditional;
 		this.target = target;
-		// create all lookup entries for type/face/suit combinations
-		lookuptable = new Hashtable<String,int[]>();
-		for(String type: sets) {
-			lookuptable.put(type, rewrite(type));
-			for(String face: types) {
-				lookuptable.put(type+" "+face, rewrite(type+" "+face));
-				for(String suit: suits) { lookuptable.put(type+" "+face+" "+suit, rewrite(type+" "+face+" "+suit)); }}}
 	}
 
 	/**
@@ -135,33 +148,49 @@ public class ConditionalPath
 		return false;
 	}
 	
+	/**
+	 * hook this path up to a known node, without looking it up by name
+	 * @param node the node this path leads to
+	 */
+	void hookUp(DNode node) { targetnode = node; }
+
+	/**
+	 * get the name of the node this path leads to
+	 * @return the target node name
+	 */
+	public String getTarget() { return target; }
+
 	/**
 	 * check whether the condition for this path is met 
+	 * @param list the dfsa list; it is never modified or copied
+	 * @param offset the position of the first entry in the list that still has to be matched
 	 * @return whether the condition for this path is met
 	 */
-	public boolean follow(int[][] list, int windoftheround, int playerwind)
+	public boolean follow(int[][] list, int offset, int windoftheround, int playerwind)
 	{
 		// terminal shortcut
-		if (list.length==0) {
-			if (ArrayUtilities.equal(conditional,EMPTYLIST)) { return targetnode.parse(null,windoftheround,playerwind); }
+		if (offset>=list.length) {
+			if (conditional.length==0) { return targetnode.parse(list,offset,windoftheround,playerwind); }
 			else { return false; }}
 		
 		// normal processing
-		int[] target = list[0];
+		int[] target = list[offset];
 		if (matches(target,null,windoftheround,playerwind)) { 
-			return targetnode.parse(ArrayUtilities.removefirst(list),windoftheround,playerwind); }
+			return targetnode.parse(list,offset+1,windoftheround,playerwind); }
 		else { return false; }
 	}
 	
 	/**
 	 * check whether the condition for this path is met, for compound value traversal
+	 * @param list the dfsa list; it is never modified or copied
+	 * @param offset the position of the first entry in the list that still has to be matched
 	 * @return whether the condition for this path is met
 	 */
-	public int followWithValue(int[][] list, int value, PointBreakdownObject points, int windoftheround, int playerwind) {
-		int[] target = list[0];
+	public int followWithValue(int[][] list, int offset, int value, PointBreakdownObject points, int windoftheround, int playerwind) {
+		int[] target = list[offset];
 		if (matches(target, points, windoftheround, playerwind)) {
 			int newvalue = value+getValue(target[MARKER]);
-			return targetnode.parseValue(ArrayUtilities.removefirst(list),newvalue,points,windoftheround,playerwind); }
+			return targetnode.parseValue(list,offset+1,newvalue,points,windoftheround,playerwind); }
 		else { return 0; }
 	}
 	
@@ -194,7 +223,7 @@ public class ConditionalPath
 	 * @param marker
 	 * @return concealedpathvalue if concealed, pathvalue otherwise
 	 */
-	private int getValue(int marker) { return (marker>CONCEALED && marker<CONCEALED_END)? concealedpathvalue : pathvalue; }
+	int getValue(int marker) { return (marker>CONCEALED && marker<CONCEALED_END)? concealedpathvalue : pathvalue; }
 
 	/**
 	 * get the tile orientation
@@ -203,6 +232,50 @@ public class ConditionalPath
 	 */
 	private String getTileOriententation(int marker) { return (marker>CONCEALED && marker<CONCEALED_END)? " concealed" : ""; }
 	
+	/**
+	 * turns the conditional into a predicate that can be evaluated without any string comparisons:
+	 * a bitmask of the tile set categories (SINGLE through KONG) it accepts, a bitmask per category of
+	 * the first tiles for which a set of that category has the right type and suit, and which wind,
+	 * if any, the first tile has to be. Conditionals that list specific tiles keep being matched by name.
+	 */
+	public void compile()
+	{
+		markermask = 0;
+		tilemasks = new long[KONG+1];
+		windselector = ANY;
+		byname = conditional.length>3;
+		if(conditional.length>0 && !byname) {
+			// which categories the set marker stands for. The concealed markers never match: the
+			// category a set is matched against is always given as its open marker.
+			int marker = conditional[MARKER];
+			if (marker==ANY || marker==OPEN) { for(int k=SINGLE; k<=KONG; k++) { markermask |= (1<<k); }}
+			else if (marker==TRIPLET) { markermask = (1<<PUNG) | (1<<KONG); }
+			else if (marker==SET) { markermask = (1<<CHOW) | (1<<PUNG) | (1<<KONG); }
+			else if (marker>=SINGLE && marker<=KONG) { markermask = (1<<marker); }
+
+			// the winds of the round and of the player are only known at match time
+			int type = (conditional.length>1) ? conditional[1] : ANY;
+			if (type==ROUNDWIND || type==OWNWIND) { windselector = type; }
+			int suit = (conditional.length>2) ? conditional[2] : ANY;
+
+			for(int k=SINGLE; k<=KONG; k++) {
+				if ((markermask & (1<<k))==0) continue;
+				for(int tile=0; tile<TilePattern.PLAYTILES+TilePattern.BONUSTILES; tile++) {
+					boolean matched = true;
+					if (type!=ANY && windselector==ANY) {
+						matched = getType(tile,-1,-1)==type;
+						// simple connected pairs and chows need to be simple throughout
+						if (type==SIMPLE && k==CONNECTEDPAIR) { matched &= TilePattern.isSimple(tile+1); }
+						if (type==SIMPLE && k==CHOW) { matched &= TilePattern.isSimple(tile+2); }}
+					if (suit!=ANY) { matched &= getSuit(tile)==suit; }
+					if (matched) { tilemasks[k] |= (1L<<tile); }}}}
+		kindmask = 0;
+		for(int k=SINGLE; k<=KONG; k++) {
+			for(int tile=0; tile<TilePattern.PLAYTILES+TilePattern.BONUSTILES; tile++) {
+				if ((tilemasks[k] & (1L<<tile))!=0) { kindmask |= (1L<<getKind(k,tile)); }}}
+		compiled = true;
+	}
+
 	/**
 	 * This is the important function - it tells us whether or not something matched, allowing us to go down this conditional path
 	 * @param sublist [MARKER, TILE[...]] list
@@ -212,29 +285,153 @@ public class ConditionalPath
 	 * @return true if this path can be taken for this sublist
 	 */
 	private boolean matches(int[] sublist, PointBreakdownObject points, int windoftheround, int playerwind)
+	{
+		if (!compiled) { compile(); }
+		if (!precompiled || byname) { return matchesByName(sublist,points,windoftheround,playerwind); }
+
+		int marker = sublist[MARKER];
+		int category = (marker>CONCEALED && marker<CONCEALED_END) ? marker-CONCEALED : marker;
+		if (category<SINGLE || category>KONG || (markermask & (1<<category))==0) { return false; }
+		int tile = sublist[TILE];
+		if (tile<0 || tile>=64 || (tilemasks[category] & (1L<<tile))==0) { return false; }
+		if (windselector==ROUNDWIND && tile!=windoftheround) { return false; }
+		if (windselector==OWNWIND && tile!=playerwind) { return false; }
+
+		if (points!=null && getValue(marker)>0) { addLine(sublist, points); }
+		return true;
+	}
+
+	/**
+	 * check whether this path can be taken for a sublist, without adding to any point breakdown
+	 * @return true if this path can be taken for this sublist
+	 */
+	boolean matches(int[] sublist, int windoftheround, int playerwind) { return matches(sublist,null,windoftheround,playerwind); }
+
+	/**
+	 * add the line for a sublist this path was taken for to a point breakdown
+	 * @param sublist [MARKER, TILE[...]] list
+	 * @param points the point breakdown to add to
+	 */
+	void addLine(int[] sublist, PointBreakdownObject points)
+	{
+		int marker = sublist[MARKER];
+		int category = (marker>CONCEALED && marker<CONCEALED_END) ? marker-CONCEALED : marker;
+		String description = sets[category];
+		if (conditional.length>1) { description += "/"+types[conditional[1]]; }
+		if (conditional.length>2) { description += "/"+suits[conditional[2]]; }
+		points.addLine(getValue(marker) +" for"+getTileOriententation(marker)+" "+description+" ("+ArrayUtilities.arrayToString(sublist)+")");
+	}
+
+	/**
+	 * check whether this path looks at the winds of the round or of the player
+	 * @return true if the same set can match or not depending on the winds
+	 */
+	boolean isWindDependent()
+	{
+		if (!compiled) { compile(); }
+		return !precompiled || byname || windselector!=ANY;
+	}
+
+	/**
+	 * check whether this path is matched through its compiled predicate, which only looks at the
+	 * category and first tile of a set, and the winds
+	 * @return true if matching does not depend on the tiles after the first
+	 */
+	boolean isPrecompiled()
+	{
+		if (!compiled) { compile(); }
+		return precompiled && !byname;
+	}
+
+	/**
+	 * get the set kinds this path might match, whatever the winds
+	 * @return bitmask with a bit set for every kind (see getKind) this path might match
+	 */
+	public long getKindMask()
+	{
+		if (!compiled) { compile(); }
+		if (!precompiled || byname) { return ALLKINDS | UNKNOWNKIND; }
+		return kindmask;
+	}
+
+	/**
+	 * check whether this path matches a set based on nothing but its kind: it does not look at
+	 * the winds or at specific tiles, and accepts either all or none of the sets of any one kind
+	 * @return true if the tiles this path might match are exactly the tiles of the kinds in its kind mask
+	 */
+	public boolean isKindExact()
+	{
+		if (!compiled) { compile(); }
+		if (!precompiled || byname || windselector!=ANY) { return false; }
+		for(int k=SINGLE; k<=KONG; k++) {
+			for(int tile=0; tile<TilePattern.PLAYTILES+TilePattern.BONUSTILES; tile++) {
+				boolean tilematch = (tilemasks[k] & (1L<<tile))!=0;
+				boolean kindmatch = (kindmask & (1L<<getKind(k,tile)))!=0;
+				if (tilematch!=kindmatch) { return false; }}}
+		return true;
+	}
+
+	/**
+	 * get the kind of a set: its category combined with the class of its first tile
+	 * @param sublist [MARKER, TILE[...]] list
+	 * @return the set kind, or -1 if no path can match this sublist
+	 */
+	public static int getKind(int[] sublist)
+	{
+		int marker = sublist[0];
+		int category = (marker>CONCEALED && marker<CONCEALED_END) ? marker-CONCEALED : marker;
+		if (category<SINGLE || category>KONG || sublist.length<2) { return -1; }
+		return getKind(category, sublist[1]);
+	}
+
+	/**
+	 * get the kind of a set from its category and first tile
+	 * @return the set kind, or -1 if the tile is not a tile
+	 */
+	private static int getKind(int category, int tile)
+	{
+		int tileclass;
+		if (tile<0 || tile>=TilePattern.PLAYTILES+TilePattern.BONUSTILES) { return -1; }
+		else if (tile<TilePattern.HONOURS) { tileclass = 2*(tile/9) + (TilePattern.isSimple(tile) ? 0 : 1); }
+		else if (tile<TilePattern.RED) { tileclass = 6; }
+		else if (tile<TilePattern.PLAYTILES) { tileclass = 7; }
+		else if (tile<TilePattern.SEASONS) { tileclass = 8; }
+		else { tileclass = 9; }
+		return (category-SINGLE)*TILECLASSES + tileclass;
+	}
+
+	/**
+	 * The original matching function, which matches the conditional by the names of the set, type and suit
+	 * @param sublist [MARKER, TILE[...]] list
+	 * @param points the point breakdown so far
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's wind
+	 * @return true if this path can be taken for this sublist
+	 */
+	private boolean matchesByName(int[] sublist, PointBreakdownObject points, int windoftheround, int playerwind)
 	{
 		// switch based on what we need to match 
 		int target = sublist[MARKER];
 
 		// cascade
 		if ((target==SINGLE || target==CONCEALED_SINGLE) 
-				&& matchConditionalPath(sublist,lookuptable.get("single"),windoftheround,playerwind)) {
-			return match("single",sublist,lookuptable.get("single"),points,windoftheround,playerwind); }
+				&& matchConditionalPath(sublist,lookup(SINGLE),windoftheround,playerwind)) {
+			return match("single",sublist,lookup(SINGLE),points,windoftheround,playerwind); }
 		else if ((target==CONNECTEDPAIR || target==CONCEALED_CONNECTEDPAIR)
-				&& matchConditionalPath(sublist,lookuptable.get("connectedpair"),windoftheround,playerwind))	{
-			return match("connectedpair",sublist,lookuptable.get("connectedpair"),points,windoftheround,playerwind); }
+				&& matchConditionalPath(sublist,lookup(CONNECTEDPAIR),windoftheround,playerwind))	{
+			return match("connectedpair",sublist,lookup(CONNECTEDPAIR),points,windoftheround,playerwind); }
 		else if ((target==PAIR || target==CONCEALED_PAIR) 
-				&& matchConditionalPath(sublist,lookuptable.get("pair"),windoftheround,playerwind))	{
-			return match("pair",sublist,lookuptable.get("pair"),points,windoftheround,playerwind); }
+				&& matchConditionalPath(sublist,lookup(PAIR),windoftheround,playerwind))	{
+			return match("pair",sublist,lookup(PAIR),points,windoftheround,playerwind); }
 		else if ((target==CHOW || target==CONCEALED_CHOW) 
-				&& matchConditionalPath(sublist,lookuptable.get("chow"),windoftheround,playerwind))	{
-			return match("chow",sublist,lookuptable.get("chow"),points,windoftheround,playerwind); }
+				&& matchConditionalPath(sublist,lookup(CHOW),windoftheround,playerwind))	{
+			return match("chow",sublist,lookup(CHOW),points,windoftheround,playerwind); }
 		else if ((target==PUNG || target==CONCEALED_PUNG) 
-				&& matchConditionalPath(sublist,lookuptable.get("pung"),windoftheround,playerwind))	{
-			return match("pung",sublist,lookuptable.get("pung"),points,windoftheround,playerwind); }
+				&& matchConditionalPath(sublist,lookup(PUNG),windoftheround,playerwind))	{
+			return match("pung",sublist,lookup(PUNG),points,windoftheround,playerwind); }
 		else if ((target==KONG || target==CONCEALED_KONG) 
-				&& matchConditionalPath(sublist,lookuptable.get("kong"),windoftheround,playerwind))	{
-			return match("kong",sublist,lookuptable.get("kong"),points,windoftheround,playerwind); }
+				&& matchConditionalPath(sublist,lookup(KONG),windoftheround,playerwind))	{
+			return match("kong",sublist,lookup(KONG),points,windoftheround,playerwind); }
 
 		// if nothing worked, no.
 		return false;
@@ -499,6 +696,52 @@ public class ConditionalPath
 		return -1;
 	}
 	
+	/**
+	 * get the rewritten conditional for a set
+	 * @param set the set (see sets array)
+	 * @return the shared conditional digest; this must not be modified
+	 */
+	public static int[] lookup(int set) { return getRegistry()[registryIndex(set,-1,-1)]; }
+
+	/**
+	 * get the rewritten conditional for a set and tile type
+	 * @param set the set (see sets array)
+	 * @param type the tile type (see types array)
+	 * @return the shared conditional digest; this must not be modified
+	 */
+	public static int[] lookup(int set, int type) { return getRegistry()[registryIndex(set,type,-1)]; }
+
+	/**
+	 * get the rewritten conditional for a set, tile type and suit
+	 * @param set the set (see sets array)
+	 * @param type the tile type (see types array)
+	 * @param suit the tile suit (see suits array)
+	 * @return the shared conditional digest; this must not be modified
+	 */
+	public static int[] lookup(int set, int type, int suit) { return getRegistry()[registryIndex(set,type,suit)]; }
+
+	/**
+	 * builds the registry if this has not happened yet
+	 */
+	private static synchronized int[][] getRegistry() {
+		if(registry==null) {
+			int[][] entries = new int[sets.length*(1+types.length*(1+suits.length))][];
+			for(int set=0; set<sets.length; set++) {
+				entries[registryIndex(set,-1,-1)] = rewrite(sets[set]);
+				for(int type=0; type<types.length; type++) {
+					entries[registryIndex(set,type,-1)] = rewrite(sets[set]+" "+types[type]);
+					for(int suit=0; suit<suits.length; suit++) { entries[registryIndex(set,type,suit)] = rewrite(sets[set]+" "+types[type]+" "+suits[suit]); }}}
+			registry = entries; }
+		return registry; }
+
+	/**
+	 * registry position: all sets first, then all set/type pairs, then all set/type/suit triples
+	 */
+	private static int registryIndex(int set, int type, int suit) {
+		if(type<0) return set;
+		if(suit<0) return sets.length + set*types.length + type;
+		return sets.length*(1+types.length) + (set*types.length+type)*suits.length + suit; }
+
 	/**
 	 * this method turns the normal text conditional into an int[] digest instead
 	 * @param conditional original string
@@ -1,7 +1,5 @@
 package core.algorithm.dynamic;
 
-import utilities.ArrayUtilities;
-
 // the DNode class is used as the FSA construction block
 public class DNode
 {
@@ -42,25 +40,30 @@ public class DNode
 	}
 	
 	/**
-	 * check whether this node accepts an input
+	 * compile the conditions of all paths leaving this node
+	 */
+	public void compile() { for(ConditionalPath cp: conditionalpaths) { cp.compile(); }}
+	
+	/**
+	 * check whether this node accepts an input, starting at a position in the dfsa list.
+	 * This stops at the first path that leads to an accept.
 	 * @return whether this node accepts an input 
 	 */
-	public boolean parse(int[][] list, int windoftheround, int playerwind) {
-		boolean parsed = false;
-		for(ConditionalPath cp: conditionalpaths) { parsed |= cp.follow(list,windoftheround,playerwind); }
-		return parsed; }
+	public boolean parse(int[][] list, int offset, int windoftheround, int playerwind) {
+		for(ConditionalPath cp: conditionalpaths) { if(cp.follow(list,offset,windoftheround,playerwind)) { return true; }}
+		return false; }
 
 	/**
-	 * check whether this node accepts an input, and returns the compound value this dFSA computed over its paths
+	 * check whether this node accepts an input, starting at a position in the dfsa list, and returns the compound value this dFSA computed over its paths
 	 * @return the compound value this dFSA computed over its paths
 	 */
-	public int parseValue(int[][] list, int value, PointBreakdownObject points, int windoftheround, int playerwind) {
-		if(list.length==0) { return value; }
+	public int parseValue(int[][] list, int offset, int value, PointBreakdownObject points, int windoftheround, int playerwind) {
+		if(offset>=list.length) { return value; }
 		int newvalue=0;
 		for(ConditionalPath cp: conditionalpaths) {
-			newvalue = cp.followWithValue(list,value,points,windoftheround,playerwind);
+			newvalue = cp.followWithValue(list,offset,value,points,windoftheround,playerwind);
 			if (newvalue>0) { return newvalue; }}
-		if (list.length>0) { return parseValue(ArrayUtilities.removefirst(list),value,points,windoftheround,playerwind); } else { return value; }}
+		return parseValue(list,offset+1,value,points,windoftheround,playerwind); }
 	
 	/**
 	 * tostring
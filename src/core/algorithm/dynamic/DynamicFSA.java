@@ -11,12 +11,16 @@
 package core.algorithm.dynamic;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 
 import utilities.ArrayUtilities;
+import core.algorithm.patterns.TilePattern;
 
 public class DynamicFSA {
 
@@ -104,6 +108,7 @@ public class DynamicFSA {
 				else if (line.equals("[/dfsa]")) {
 					// add dfsa to dfsas
 					DynamicFSA dfsa = new DynamicFSA(dfsaname, dfsaval, nodes);
+					dfsa.compile();
 					dfsas = ArrayUtilities.add(dfsas,dfsa);
 					nodes = new DNode[0];
 					parsing=false;
@@ -129,11 +134,96 @@ public class DynamicFSA {
 		return dfsas;
 	}
 	
+	/**
+	 * writes a list of loaded DynamicFSA objects in the compiled ruleset format (see CustomScoresAndValues.writeCompiled).
+	 * Paths are written with the position of the node they lead to, so reading them back needs no name lookups.
+	 * @param out the stream to write to
+	 * @param dfsas the DynamicFSA objects to write
+	 */
+	public static void writeDFSAs(DataOutputStream out, DynamicFSA[] dfsas) throws IOException
+	{
+		out.writeInt(dfsas.length);
+		for(DynamicFSA dfsa: dfsas) {
+			out.writeUTF(dfsa.name);
+			out.writeInt(dfsa.value);
+			// the accepting node is always the last node, and is not written
+			out.writeInt(dfsa.nodes.length-1);
+			for(int n=0; n<dfsa.nodes.length-1; n++) {
+				DNode node = dfsa.nodes[n];
+				ConditionalPath[] paths = node.getConditionalPaths();
+				out.writeUTF(node.getName());
+				out.writeInt(paths.length);
+				for(ConditionalPath cp: paths) {
+					int[] conditional = cp.getConditions();
+					out.writeInt(conditional.length);
+					for(int c: conditional) { out.writeInt(c); }
+					out.writeUTF(cp.getTarget());
+					int target = -1;
+					for(int t=0; t<dfsa.nodes.length; t++) { if(dfsa.nodes[t]==cp.getTo()) { target = t; }}
+					out.writeInt(target);
+					out.writeInt(cp.getValue(ConditionalPath.OPEN));
+					out.writeInt(cp.getValue(ConditionalPath.CONCEALED_SINGLE)); }}}
+	}
+
+	/**
+	 * reads a list of DynamicFSA objects written by writeDFSAs, hooked up and compiled
+	 * @param in the stream to read from
+	 * @return an array of DynamicFSA objects
+	 */
+	public static DynamicFSA[] readDFSAs(DataInputStream in) throws IOException
+	{
+		DynamicFSA[] dfsas = new DynamicFSA[in.readInt()];
+		for(int d=0; d<dfsas.length; d++) {
+			DynamicFSA dfsa = new DynamicFSA(in.readUTF(), in.readInt());
+			dfsa.nodes = new DNode[in.readInt()+1];
+			int[][] targets = new int[dfsa.nodes.length][];
+			for(int n=0; n<dfsa.nodes.length-1; n++) {
+				String nodename = in.readUTF();
+				ConditionalPath[] paths = new ConditionalPath[in.readInt()];
+				targets[n] = new int[paths.length];
+				for(int p=0; p<paths.length; p++) {
+					int[] conditional = new int[in.readInt()];
+					for(int c=0; c<conditional.length; c++) { conditional[c] = in.readInt(); }
+					String target = in.readUTF();
+					targets[n][p] = in.readInt();
+					paths[p] = new ConditionalPath(conditional, target, in.readInt(), in.readInt()); }
+				dfsa.nodes[n] = new DNode(nodename, paths);
+				if (nodename.equals("start")) { dfsa.start = dfsa.nodes[n]; }}
+			dfsa.nodes[dfsa.nodes.length-1] = new AcceptingDNode();
+			for(int n=0; n<dfsa.nodes.length-1; n++) {
+				ConditionalPath[] paths = dfsa.nodes[n].getConditionalPaths();
+				for(int p=0; p<paths.length; p++) { if(targets[n][p]>=0) { paths[p].hookUp(dfsa.nodes[targets[n][p]]); }}}
+			dfsa.compile();
+			dfsas[d] = dfsa; }
+		return dfsas;
+	}
+
 	private String name;
 	private int value;
 	public static final int REJECTED = 0;
 	private DNode start;
 	private DNode[] nodes;
+	// for every node, the index of the node each of its paths leads to (see compile)
+	private int[][] pathtargets;
+
+	// whether rules are simplified when they are loaded (see optimize); can be switched off for comparison
+	public static boolean optimizing = true;
+	// the set kinds any path might match, those a path with a value might match, and whether
+	// every set in a list has to be matched for the list to be accepted (see compile)
+	private long kinds;
+	private long valuedkinds;
+	private boolean consumesall;
+	// whether sets are matched regardless of their order (see compile), and against which kinds
+	public static boolean multisets = true;
+	private boolean multiset;
+	private long multisetkinds;
+	// for rules that value every set on its own: which path is taken first for a set, and which is
+	// the first path worth anything, by set marker, first tile, and wind pair (see compile)
+	public static boolean valuetables = true;
+	private static final int TABLETILES = TilePattern.PLAYTILES+TilePattern.BONUSTILES;
+	private short[] firstpaths;
+	private short[] valuedpaths;
+	private int windpairs;
 
 	/**
 	 * set up a dynamically generated FSA
@@ -158,6 +248,302 @@ public class DynamicFSA {
 			if (node.getName().equals("start")) { start = node; }}
 	}
 	
+	/**
+	 * set up a dynamically generated FSA whose nodes are filled in by the caller
+	 */
+	private DynamicFSA(String name, int value)
+	{
+		this.name = name;
+		this.value = value;
+	}
+
+	/**
+	 * turn the conditions on all paths into their precompiled form, so that
+	 * matching them during scoring needs no string comparisons
+	 */
+	public void compile() {
+		pathtargets = new int[nodes.length][];
+		kinds = 0;
+		valuedkinds = 0;
+		consumesall = true;
+		multiset = (start!=null);
+		multisetkinds = 0;
+		boolean terminates = false;
+		for(int n=0; n<nodes.length; n++) {
+			nodes[n].compile();
+			ConditionalPath[] paths = nodes[n].getConditionalPaths();
+			pathtargets[n] = new int[paths==null ? 0 : paths.length];
+			for(int p=0; p<pathtargets[n].length; p++) {
+				pathtargets[n][p] = -1;
+				for(int t=0; t<nodes.length; t++) { if(nodes[t]==paths[p].getTo()) { pathtargets[n][p] = t; }}
+				// the load time analysis for the rule prefilter
+				kinds |= paths[p].getKindMask();
+				if (paths[p].getValue(ConditionalPath.OPEN)>0 || paths[p].getValue(ConditionalPath.CONCEALED_SINGLE)>0) { valuedkinds |= paths[p].getKindMask(); }
+				if (paths[p].getConditions().length>0 && paths[p].getTo() instanceof AcceptingDNode) { consumesall = false; }
+				// the load time analysis for the multiset matcher
+				if (nodes[n]!=start) { multiset = false; }
+				else if (paths[p].getConditions().length==0 && paths[p].getTo() instanceof AcceptingDNode) { terminates = true; }
+				else if (paths[p].getConditions().length>0 && paths[p].getTo()==start && paths[p].isKindExact()) { multisetkinds |= paths[p].getKindMask(); }
+				else { multiset = false; }}}
+		multiset &= terminates;
+		buildValueTables(); }
+
+	/**
+	 * builds the value tables for parseValue, if this automaton values every set on its own: the
+	 * start node only has paths that loop back onto it, and those only look at the category and
+	 * first tile of a set, and perhaps the winds. Paths without a condition are never taken by
+	 * parseValue, so they do not matter.
+	 */
+	private void buildValueTables()
+	{
+		firstpaths = null;
+		valuedpaths = null;
+		if (start==null) return;
+		ConditionalPath[] paths = start.getConditionalPaths();
+		boolean winds = false;
+		for(ConditionalPath cp: paths) {
+			if (cp.getConditions().length==0) continue;
+			if (cp.getTo()!=start || !cp.isPrecompiled()) return;
+			winds |= cp.isWindDependent(); }
+		windpairs = winds ? 16 : 1;
+		firstpaths = new short[ConditionalPath.CONCEALED_END*TABLETILES*windpairs];
+		valuedpaths = new short[firstpaths.length];
+		for(int marker=0; marker<ConditionalPath.CONCEALED_END; marker++) {
+			for(int tile=0; tile<TABLETILES; tile++) {
+				int[] sublist = {marker, tile};
+				for(int w=0; w<windpairs; w++) {
+					int index = (marker*TABLETILES + tile)*windpairs + w;
+					firstpaths[index] = -1;
+					valuedpaths[index] = -1;
+					for(int p=paths.length-1; p>=0; p--) {
+						if (!paths[p].matches(sublist, TilePattern.EAST+w/4, TilePattern.EAST+w%4)) continue;
+						firstpaths[index] = (short)p;
+						if (paths[p].getValue(marker)>0) { valuedpaths[index] = (short)p; }}}}}
+	}
+
+	/**
+	 * summarise a dfsa list for the rule prefilter
+	 * @param list the dfsa list
+	 * @return bitmask with a bit set for every set kind (see ConditionalPath.getKind) in the list,
+	 *         plus ConditionalPath.UNKNOWNKIND if the list has anything that is not a set
+	 */
+	public static long summarize(int[][] list) {
+		long summary = 0;
+		for(int[] entry: list) {
+			int kind = ConditionalPath.getKind(entry);
+			summary |= (kind>=0) ? (1L<<kind) : ConditionalPath.UNKNOWNKIND; }
+		return summary; }
+
+	/**
+	 * the rule prefilter for parse: a list can only be accepted if it has no set kinds this
+	 * automaton can not match, at least when every set in the list has to be matched
+	 * @param summary the list summary, see summarize
+	 * @return false if parse is certain to reject the list
+	 */
+	public boolean mayAccept(long summary) {
+		if(pathtargets==null) { compile(); }
+		return !consumesall || !ConditionalPath.precompiled || (summary & ~kinds)==0; }
+
+	/**
+	 * the rule prefilter for parseValue: a list can only be worth something if it has a set
+	 * kind that a path with a value might match
+	 * @param summary the list summary, see summarize
+	 * @return false if parseValue is certain to return 0 for the list
+	 */
+	public boolean mayScore(long summary) {
+		if(pathtargets==null) { compile(); }
+		return !ConditionalPath.precompiled || (summary & valuedkinds)!=0; }
+	
+	/**
+	 * simplifies this automaton without changing what it computes. Nodes that can not be reached
+	 * from the start node are removed, and nodes that behave the same (the same conditions in the
+	 * same order, with the same values, leading to equivalent nodes) are merged.
+	 * Automata that are only used to accept or reject (parse, not parseValue) are also made
+	 * deterministic where paths leaving a node share a condition: those are turned into a single
+	 * path to a node that has the paths of all their target nodes. Paths in these automata that
+	 * are duplicates of earlier paths are dropped.
+	 * @param acceptonly true if this automaton is only ever used through parse
+	 */
+	public void optimize(boolean acceptonly)
+	{
+		if(!optimizing || start==null || validate()!=null) return;
+		int accept = nodes.length-1;
+		int first = 0;
+		while(nodes[first]!=start) { first++; }
+
+		// the paths of every node, as conditions and target node positions
+		int[][][] conditions = new int[nodes.length][][];
+		int[][] targets = new int[nodes.length][];
+		int[][][] values = new int[nodes.length][][];
+		for(int n=0; n<accept; n++) {
+			ConditionalPath[] paths = nodes[n].getConditionalPaths();
+			conditions[n] = new int[paths.length][];
+			targets[n] = new int[paths.length];
+			values[n] = new int[paths.length][];
+			for(int p=0; p<paths.length; p++) {
+				conditions[n][p] = paths[p].getConditions();
+				for(int t=0; t<nodes.length; t++) { if(nodes[t]==paths[p].getTo()) { targets[n][p] = t; }}
+				values[n][p] = new int[] {paths[p].getValue(ConditionalPath.OPEN), paths[p].getValue(ConditionalPath.CONCEALED_SINGLE)}; }}
+
+		// the new nodes, as sets of old nodes; for automata that are not made deterministic these are single nodes
+		int[][] members = {{first}};
+		int[][][] newconditions = new int[0][][];
+		int[][] newtargets = new int[0][];
+		int[][][] newvalues = new int[0][][];
+		for(int m=0; m<members.length; m++) {
+			int[][] mconditions = new int[0][];
+			int[] mtargets = new int[0];
+			int[][] mvalues = new int[0][];
+			boolean accepting = false;
+			for(int n: members[m]) { accepting |= (n==accept); }
+			if(!accepting) {
+				for(int n: members[m]) {
+					for(int p=0; p<conditions[n].length; p++) {
+						int[] target = {targets[n][p]};
+						int existing = -1;
+						if(acceptonly) { for(int q=0; q<mconditions.length; q++) { if(Arrays.equals(mconditions[q], conditions[n][p])) { existing = q; }}}
+						if(existing>=0) {
+							// merge the targets, in the order they appear in
+							int[] merged = ArrayUtilities.mergeIntArrays(members[mtargets[existing]], target);
+							Arrays.sort(merged);
+							merged = unique(merged);
+							if(merged[merged.length-1]==accept) { merged = new int[] {accept}; }
+							mtargets[existing] = findOrAdd(members, merged);
+							if(mtargets[existing]==members.length) { members = addMembers(members, merged); }
+							continue; }
+						int found = findOrAdd(members, target);
+						if(found==members.length) { members = addMembers(members, target); }
+						mconditions = ArrayUtilities.add(mconditions, conditions[n][p]);
+						mtargets = ArrayUtilities.add(mtargets, found);
+						mvalues = ArrayUtilities.add(mvalues, values[n][p]); }}}
+			if(members.length>4*nodes.length) return;
+			newconditions = addConditions(newconditions, mconditions);
+			newtargets = ArrayUtilities.add(newtargets, mtargets);
+			newvalues = addConditions(newvalues, mvalues); }
+
+		// merge equivalent nodes: start by telling nodes apart by their own paths, then by where their paths lead, until nothing changes
+		int count = members.length;
+		int[] classes = new int[count];
+		int classcount = 0;
+		while(true) {
+			String[] signatures = new String[count];
+			for(int m=0; m<count; m++) {
+				boolean accepting = members[m].length==1 && members[m][0]==accept;
+				StringBuilder signature = new StringBuilder(accepting ? "accept" : "node");
+				for(int p=0; p<newconditions[m].length; p++) {
+					signature.append('|').append(Arrays.toString(newconditions[m][p])).append('>').append(classcount==0 ? 0 : classes[newtargets[m][p]]);
+					if(!acceptonly) { signature.append('=').append(newvalues[m][p][0]).append('/').append(newvalues[m][p][1]); }}
+				signatures[m] = signature.toString(); }
+			int[] newclasses = new int[count];
+			int newclasscount = 0;
+			for(int m=0; m<count; m++) {
+				newclasses[m] = newclasscount;
+				for(int o=0; o<m; o++) { if(signatures[o].equals(signatures[m])) { newclasses[m] = newclasses[o]; break; }}
+				if(newclasses[m]==newclasscount) { newclasscount++; }}
+			boolean stable = (newclasscount==classcount);
+			classes = newclasses;
+			classcount = newclasscount;
+			if(stable) break; }
+
+		// build the new nodes, one per class, with the accepting node last
+		DNode[] newnodes = new DNode[classcount];
+		int acceptclass = -1;
+		for(int m=0; m<count; m++) { if(members[m].length==1 && members[m][0]==accept) { acceptclass = classes[m]; }}
+		int[] positions = new int[classcount];
+		for(int c=0, pos=0; c<classcount; c++) { positions[c] = (c==acceptclass) ? classcount-1 : pos++; }
+		if(acceptclass==-1) {
+			// the accepting node can't be reached; it is kept anyway
+			newnodes = new DNode[classcount+1];
+			newnodes[classcount] = new AcceptingDNode(); }
+		else { newnodes[classcount-1] = new AcceptingDNode(); }
+		int[] representative = new int[classcount];
+		for(int m=count-1; m>=0; m--) { representative[classes[m]] = m; }
+		String[] nodenames = new String[classcount];
+		for(int c=0; c<classcount; c++) {
+			int m = representative[c];
+			nodenames[c] = (c==acceptclass) ? "accept" : (classes[0]==c) ? "start" : nodes[members[m][0]].getName();
+			for(int n=1; n<members[m].length; n++) { nodenames[c] += "+"+nodes[members[m][n]].getName(); }}
+		for(int c=0; c<classcount; c++) {
+			if(c==acceptclass) continue;
+			int m = representative[c];
+			ConditionalPath[] paths = new ConditionalPath[newconditions[m].length];
+			for(int p=0; p<paths.length; p++) { paths[p] = new ConditionalPath(newconditions[m][p], nodenames[classes[newtargets[m][p]]], newvalues[m][p][0], newvalues[m][p][1]); }
+			newnodes[positions[c]] = new DNode(nodenames[c], paths); }
+		for(int c=0; c<classcount; c++) {
+			if(c==acceptclass) continue;
+			ConditionalPath[] paths = newnodes[positions[c]].getConditionalPaths();
+			int m = representative[c];
+			for(int p=0; p<paths.length; p++) { paths[p].hookUp(newnodes[positions[classes[newtargets[m][p]]]]); }}
+
+		nodes = newnodes;
+		start = newnodes[positions[classes[0]]];
+		compile();
+	}
+
+	/**
+	 * find a set of nodes in a list of node sets
+	 * @return the position of the set, or the length of the list if it is not in it
+	 */
+	private static int findOrAdd(int[][] members, int[] set) {
+		for(int m=0; m<members.length; m++) { if(Arrays.equals(members[m], set)) { return m; }}
+		return members.length; }
+
+	private static int[][] addMembers(int[][] members, int[] set) {
+		int[][] ret = new int[members.length+1][];
+		System.arraycopy(members, 0, ret, 0, members.length);
+		ret[members.length] = set;
+		return ret; }
+
+	private static int[][][] addConditions(int[][][] list, int[][] item) {
+		int[][][] ret = new int[list.length+1][][];
+		System.arraycopy(list, 0, ret, 0, list.length);
+		ret[list.length] = item;
+		return ret; }
+
+	private static int[] unique(int[] sorted) {
+		int[] ret = new int[0];
+		for(int i=0; i<sorted.length; i++) { if(i==0 || sorted[i]!=sorted[i-1]) { ret = ArrayUtilities.add(ret, sorted[i]); }}
+		return ret; }
+
+	/**
+	 * check whether this automaton is matched as a multiset: its only node loops back onto itself
+	 * for every set it accepts, and accepts at the end of the list, and all its conditions
+	 * depend on nothing but set kinds. Such a rule accepts a list when every set in it is of a
+	 * kind it accepts, whatever their order, so parse only has to look at the list summary.
+	 * @return true if parse uses the multiset matcher for this automaton
+	 */
+	public boolean isMultiset() {
+		if(pathtargets==null) { compile(); }
+		return multiset; }
+
+	/**
+	 * get the number of nodes in this automaton, not counting the accepting node
+	 */
+	public int getNodeCount() { return nodes.length-1; }
+
+	/**
+	 * get the number of paths in this automaton
+	 */
+	public int getPathCount() {
+		int count = 0;
+		for(DNode node: nodes) { if(node.getConditionalPaths()!=null) { count += node.getConditionalPaths().length; }}
+		return count; }
+
+	/**
+	 * checks that this automaton can be used: it needs a start node, and every path has to lead to a node
+	 * @return a description of the first problem found, or null if there is none
+	 */
+	public String validate()
+	{
+		if(start==null) { return "dfsa \""+name+"\" has no start node"; }
+		for(DNode node: nodes) {
+			ConditionalPath[] paths = node.getConditionalPaths();
+			if(paths==null) continue;
+			for(ConditionalPath cp: paths) {
+				if(cp.getTo()==null) { return "dfsa \""+name+"\" has a path from node \""+node.getName()+"\" to unknown node \""+cp.getTarget()+"\""; }}}
+		return null;
+	}
+
 	/**
 	 * get name
 	 * @return name
@@ -181,21 +567,91 @@ public class DynamicFSA {
 	
 	/**
 	 * parse a set
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
 	 * @return value of set, or REJECTED if not accepted
 	 */
 	public int parse(int[][] list, PointBreakdownObject points, int windoftheround, int playerwind)
 	{
-		if(start.parse(list,windoftheround,playerwind)) {
-			points.addLine(value+ " for "+name);
+		if(pathtargets==null) { compile(); }
+		return parse(list, (multiset ? summarize(list) : 0), points, windoftheround, playerwind);
+	}
+
+	/**
+	 * parse a set whose summary is already known, which multiset rules are matched against
+	 * without walking the list
+	 * @param summary the list summary, see summarize
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
+	 * @return value of set, or REJECTED if not accepted
+	 */
+	public int parse(int[][] list, long summary, PointBreakdownObject points, int windoftheround, int playerwind)
+	{
+		if(pathtargets==null) { compile(); }
+		boolean accepted;
+		if(multiset && multisets && ConditionalPath.precompiled) { accepted = (summary & ~multisetkinds)==0; }
+		else { accepted = start.parse(list,0,windoftheround,playerwind); }
+		if(accepted) {
+			if(points!=null) { points.addLine(value+ " for "+name); }
 			return value; }
 		return REJECTED;
 	}
 
 	/**
 	 * parse a set for its cumulative value
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
 	 * @return value of set
 	 */
-	public int parseValue(int[][] list, PointBreakdownObject points, int windoftheround, int playerwind) { return start.parseValue(list,0,points,windoftheround,playerwind); }
+	public int parseValue(int[][] list, PointBreakdownObject points, int windoftheround, int playerwind)
+	{
+		if(pathtargets==null) { compile(); }
+		int windpair = 0;
+		if(windpairs>1) {
+			int round = windoftheround-TilePattern.EAST;
+			int own = playerwind-TilePattern.EAST;
+			windpair = (round>=0 && round<4 && own>=0 && own<4) ? round*4 + own : -1; }
+		if(firstpaths==null || !valuetables || !ConditionalPath.precompiled || windpair<0) { return start.parseValue(list,0,0,points,windoftheround,playerwind); }
+
+		// every set is matched by the first path it fits, so the value is the sum of what those paths are worth
+		ConditionalPath[] paths = start.getConditionalPaths();
+		int value = 0;
+		for(int[] entry: list) {
+			int index = getTableIndex(entry, windpair);
+			if(index>=0 && firstpaths[index]>=0) { value += paths[firstpaths[index]].getValue(entry[0]); }}
+		if(value>0) {
+			if(points!=null) {
+				for(int[] entry: list) {
+					int index = getTableIndex(entry, windpair);
+					if(index>=0 && firstpaths[index]>=0 && paths[firstpaths[index]].getValue(entry[0])>0) { paths[firstpaths[index]].addLine(entry, points); }}}
+			return value; }
+
+		// unless that is nothing, in which case the automaton ends up trying the other paths for the
+		// last sets first, and takes the first one that is worth something
+		for(int e=list.length-1; e>=0; e--) {
+			int index = getTableIndex(list[e], windpair);
+			if(index<0 || valuedpaths[index]<0) continue;
+			if(points!=null) { paths[valuedpaths[index]].addLine(list[e], points); }
+			return paths[valuedpaths[index]].getValue(list[e][0]); }
+		return 0;
+	}
+
+	/**
+	 * get the value table position for a set
+	 * @param entry [MARKER, TILE[...]] list
+	 * @param windpair the wind pair position, see buildValueTables
+	 * @return the table index, or -1 if no path can match this set
+	 */
+	private int getTableIndex(int[] entry, int windpair)
+	{
+		if(entry.length<2 || entry[0]<0 || entry[0]>=ConditionalPath.CONCEALED_END || entry[1]<0 || entry[1]>=TABLETILES) { return -1; }
+		return (entry[0]*TABLETILES + entry[1])*windpairs + windpair;
+	}
+
+	/**
+	 * check whether parseValue looks its sets up in value tables rather than walking the automaton
+	 * @return true if this automaton values every set on its own
+	 */
+	public boolean hasValueTables() {
+		if(pathtargets==null) { compile(); }
+		return firstpaths!=null; }
 
 
 	/**
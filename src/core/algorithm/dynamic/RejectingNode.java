@@ -10,18 +10,23 @@ public class RejectingNode extends DNode {
 	 * @return true
 	 */
 	public boolean hookUp(DNode[] nodes) { return true; }
+
+	/**
+	 * the rejecting node has no outgoing paths, so there is nothing to compile
+	 */
+	public void compile() {}
 	
 	/**
 	 * accepting node: returns true
 	 * @return true
 	 */
-	public boolean parse(int[][] list, int windoftheround, int playerwind) { return false; }
+	public boolean parse(int[][] list, int offset, int windoftheround, int playerwind) { return false; }
 
 	/**
 	 * accepting node: returns true
 	 * @return true
 	 */
-	public int parseValue(int[][] list, int value, PointBreakdownObject points, int windoftheround, int playerwind) {  return 0; }
+	public int parseValue(int[][] list, int offset, int value, PointBreakdownObject points, int windoftheround, int playerwind) {  return 0; }
 
 	/**
 	 * tostring
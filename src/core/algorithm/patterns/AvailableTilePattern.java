@@ -83,7 +83,7 @@ public class AvailableTilePattern extends TilePattern {
 		 */
 		
 		// step 1: decrease that singles entry
-		specificbins[SINGLE][tilenumber]--;
+		ownSpecificBin(SINGLE)[tilenumber]--;
 		genericbins[SINGLE]--;
 		
 		// step 2: get the new value.
@@ -95,17 +95,17 @@ public class AvailableTilePattern extends TilePattern {
 			// connected pairs - adjust three values:
 			if(isNumeral(tilenumber)) {
 				if (notOne(tilenumber) && specificbins[CONNECTED][tilenumber-1]>0) {
-					specificbins[CONNECTED][tilenumber-1]--;
+					ownSpecificBin(CONNECTED)[tilenumber-1]--;
 					genericbins[CONNECTED]--; }
-				specificbins[CONNECTED][tilenumber]--;
+				ownSpecificBin(CONNECTED)[tilenumber]--;
 				genericbins[CONNECTED]--;
 				if (notNine(tilenumber) && specificbins[CONNECTED][tilenumber+1]>0) {
-					specificbins[CONNECTED][tilenumber+1]--;
+					ownSpecificBin(CONNECTED)[tilenumber+1]--;
 					genericbins[CONNECTED]--; } }
 			
 			// pairs:
 			if (newsingle==3 || newsingle==1) {
-				specificbins[PAIR][tilenumber] = 1;
+				ownSpecificBin(PAIR)[tilenumber] = 1;
 				genericbins[PAIR]--;
 			}
 	
@@ -113,33 +113,33 @@ public class AvailableTilePattern extends TilePattern {
 			if(isNumeral(tilenumber))
 			{
 				if (notOne(tilenumber) && notTwo(tilenumber) && specificbins[CHOW][tilenumber-2]>0) {
-					specificbins[CHOW][tilenumber-2]--;
+					ownSpecificBin(CHOW)[tilenumber-2]--;
 					genericbins[CHOW]--; }
 				if (notOne(tilenumber) && specificbins[CHOW][tilenumber-1]>0) {
-					specificbins[CHOW][tilenumber-1]--;
+					ownSpecificBin(CHOW)[tilenumber-1]--;
 					genericbins[CHOW]--; }
-				specificbins[CHOW][tilenumber]--;
+				ownSpecificBin(CHOW)[tilenumber]--;
 				genericbins[CHOW]--;
 				if (notNine(tilenumber) && specificbins[CHOW][tilenumber+1]>0) {
-					specificbins[CHOW][tilenumber+1]--;
+					ownSpecificBin(CHOW)[tilenumber+1]--;
 					genericbins[CHOW]--; }
 				if (notNine(tilenumber) && notEight(tilenumber) && specificbins[CHOW][tilenumber+2]>0) {
-					specificbins[CHOW][tilenumber+2]--;
+					ownSpecificBin(CHOW)[tilenumber+2]--;
 					genericbins[CHOW]--; } }
 	
 			// pungs:
 			if (newsingle<3) {
-				specificbins[PUNG][tilenumber] = 0;
+				ownSpecificBin(PUNG)[tilenumber] = 0;
 				genericbins[PUNG]--; }
 	
 			// kongs:
 			if (newsingle<4) {
-				specificbins[KONG][tilenumber] = 0;
+				ownSpecificBin(KONG)[tilenumber] = 0;
 				genericbins[KONG]--; }
 	
 			// sets:
 			int oldtilenumber = specificbins[SET][tilenumber];
-			specificbins[SET][tilenumber] = specificbins[PAIR][tilenumber] + specificbins[CHOW][tilenumber] + specificbins[PUNG][tilenumber] + specificbins[KONG][tilenumber];
+			ownSpecificBin(SET)[tilenumber] = specificbins[PAIR][tilenumber] + specificbins[CHOW][tilenumber] + specificbins[PUNG][tilenumber] + specificbins[KONG][tilenumber];
 			int newtilenumber = specificbins[SET][tilenumber]; 
 			genericbins[SET] -= oldtilenumber-newtilenumber;
 		}
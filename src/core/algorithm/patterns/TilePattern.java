@@ -163,7 +163,12 @@ public class TilePattern {
 	public final static int RED					= 31;
 	public final static int GREEN				= 32;
 	public final static int WHITE				= 33;
-	protected int[][] specificbins = new int[genericbins.length][specificnames.length];
+	protected int[][] specificbins;
+	// bit g is set when specificbins[g] may be shared with other patterns, in which case the bin has to
+	// be copied before it can be written to. Copies only share the bins that are marked here (see share),
+	// so that making a copy never changes the pattern it is made from.
+	private int sharedbins = 0;
+	private final static int ALLBINS = (1<<genericnames.length)-1;
 	
 	// these tiles are used for special bonus scoring, and are not part of the cyclical set. However, they do need non-overlapping identifiers.
 	
@@ -207,6 +212,8 @@ public class TilePattern {
 	protected int patterntype;
 	private int[][] dfsalist;
 	private int[][] concealeddfsalist;
+	// the dfsa lists are only (re)built when they are asked for after the bins changed
+	private boolean dfsadirty = true;
 
 //	----------------------------
 	
@@ -335,10 +342,11 @@ public class TilePattern {
 	 */
 	public TilePattern(int type) {
 		patterntype = type;
+		specificbins = new int[genericbins.length][specificnames.length];
 		for(int g=0;g<genericbins.length;g++){
 			genericbins[g] = 0;
 			for(int s=0;s<specificbins[g].length;s++){ specificbins[g][s] = 0; }}
-		formDFSAlist();
+		dfsadirty = true;
 	}
 	
 	/**
@@ -346,8 +354,27 @@ public class TilePattern {
 	 */
 	public TilePattern(TilePattern original) {
 		genericbins = ArrayUtilities.copy(original.genericbins);
-		specificbins = ArrayUtilities.copy(original.specificbins);
-		formDFSAlist();
+		// bins the original has marked as shared are shared until either pattern writes to them, the others are copied
+		specificbins = original.specificbins.clone();
+		sharedbins = original.sharedbins;
+		for(int g=0; g<specificbins.length; g++) {
+			if((sharedbins & (1<<g))==0) { specificbins[g] = specificbins[g].clone(); }}
+		// dfsa lists are never changed once they are built, so the copy can use the original's until it changes
+		dfsadirty = original.dfsadirty;
+		if(!dfsadirty) {
+			dfsalist = original.dfsalist;
+			concealeddfsalist = original.concealeddfsalist; }
+	}
+
+	/**
+	 * marks all specific bins as shared, so that copies of this pattern use them without copying them,
+	 * and whichever pattern writes to a bin first copies it. This changes this pattern, so it has to be
+	 * called by whoever owns it, before the pattern is copied, or handed to other threads.
+	 * @return this pattern
+	 */
+	public TilePattern share() {
+		sharedbins = ALLBINS;
+		return this;
 	}
 	
 // =============================================================================
@@ -432,6 +459,9 @@ public class TilePattern {
 	 */
 	private RequiredTilePattern complexGenericDifference(TilePattern pattern, TilePattern difference)
 	{
+		// the single bins of the target pattern are taken apart below, but its dfsa lists
+		// have to keep describing the pattern as it was parsed, so make sure they exist now
+		if(pattern.dfsadirty) pattern.formDFSAlist();
 		int[] optimisedgenericbindifference = TilePattern.generateEmptyGeneric();
 		int[][] optimisedspecificbindifference = TilePattern.generateEmptySpecific();
 
@@ -632,8 +662,8 @@ public class TilePattern {
 						if (tile<HONOURS-2 && pattern.specificbins[TilePattern.SINGLE][tile+2]>0) {
 							optimisedgenericbindifference[TilePattern.SINGLE]       += 1;
 							// remove to prevent accidental later processing
-							pattern.specificbins[TilePattern.SINGLE][tile]             -= 1; 
-							pattern.specificbins[TilePattern.SINGLE][tile+2]           -= 1; 
+							pattern.ownSpecificBin(TilePattern.SINGLE)[tile]           -= 1; 
+							pattern.ownSpecificBin(TilePattern.SINGLE)[tile+2]         -= 1; 
 							optimisedspecificbindifference[TilePattern.SINGLE][tile+1] += 1; 
 							optimisedspecificbindifference[TilePattern.CHOW][tile]     += 1; }
 						// if not, do regular processing
@@ -825,8 +855,8 @@ public class TilePattern {
 						if (tile<HONOURS-2 && pattern.specificbins[TilePattern.SINGLE][tile+2]>0) {
 							optimisedgenericbindifference[TilePattern.SINGLE]       += 1;
 							// remove to prevent accidental later processing
-							pattern.specificbins[TilePattern.SINGLE][tile]             -= 1; 
-							pattern.specificbins[TilePattern.SINGLE][tile+2]           -= 1; 
+							pattern.ownSpecificBin(TilePattern.SINGLE)[tile]           -= 1; 
+							pattern.ownSpecificBin(TilePattern.SINGLE)[tile+2]         -= 1; 
 							optimisedspecificbindifference[TilePattern.SINGLE][tile+1] += 1; 
 							optimisedspecificbindifference[TilePattern.SET][tile+1]    += 1;
 							optimisedspecificbindifference[TilePattern.CHOW][tile]		+= 1; 	// mark this as a chow we're going for
@@ -1003,7 +1033,7 @@ public class TilePattern {
 	/**
 	 * return the value array of a specific bin
 	 * @param bin any of the types in genericnames
-	 * @return the int[] array in this specific bin
+	 * @return the int[] array in this specific bin; this array may be shared with copies of this pattern, and should not be modified
 	 */
 	public int[] getSpecificValues(int bin) { return specificbins[bin]; }
 
@@ -1026,9 +1056,9 @@ public class TilePattern {
 	 */
 	public void incrementTileAndPattern(int tile, int pattern) {
 		genericbins[pattern]++;
-		specificbins[pattern][tile]++;
+		ownSpecificBin(pattern)[tile]++;
 		if(pattern>PAIR) genericbins[SET]++;
-		formDFSAlist();
+		dfsadirty = true;
 	}
 	
 	/**
@@ -1037,7 +1067,7 @@ public class TilePattern {
 	 */
 	protected void  setGenericBins(int[] generic) {
 		genericbins = generic; 
-		formDFSAlist();	}
+		dfsadirty = true;	}
 	
 	/**
 	 * consult this pattern's score
@@ -1057,9 +1087,21 @@ public class TilePattern {
 	 */
 	protected void  setSpecificBins(int[][] specific) {
 		specificbins = specific; 
-		formDFSAlist();
+		sharedbins = 0;
+		dfsadirty = true;
 	}
 	
+	/**
+	 * get a specific bin for writing, copying it first if it is still shared with another pattern
+	 * @param bin any of the types in genericnames
+	 * @return the int[] array in this specific bin, owned by this pattern
+	 */
+	protected int[] ownSpecificBin(int bin) {
+		if((sharedbins & (1<<bin))!=0) {
+			specificbins[bin] = specificbins[bin].clone();
+			sharedbins &= ~(1<<bin); }
+		return specificbins[bin]; }
+
 	/**
 	 * create the "standard" win pattern pair + 4 sets
 	 * @return the standard win pattern, modelled as a TilePattern
@@ -1079,7 +1121,9 @@ public class TilePattern {
 	 * @param concealed flag to determine whether we want the face up or concealed dfsalist
 	 * @return the int[][] (see formDFA) list representing this hand - normal list if concealed was false, concealed list if it was true
 	 */
-	public int[][] getDFSAlist(boolean concealed) { if(concealed) return concealeddfsalist; else return dfsalist; }
+	public int[][] getDFSAlist(boolean concealed) {
+		if(dfsadirty) formDFSAlist();
+		if(concealed) return concealeddfsalist; else return dfsalist; }
 	
 	
 	//TEST
@@ -1089,12 +1133,18 @@ public class TilePattern {
 	 * turns the tile pattern as stored in this pattern into an int[][] list that can be
 	 * understood by the dynamic FSA system used for scoring. It creates two of these lists,
 	 * one for if the pattern is to be considered "face up", and one for "concealed".
+	 * Every tile that has a nonzero count in a bin gets one entry, in bin order.
 	 */
 	private void formDFSAlist()
 	{
-		dfsalist = new int[0][0];
-		concealeddfsalist = new int[0][0];
-		for(int g=0;g<genericnames.length;g++) {
+		int entries = 0;
+		for(int g=0;g<=KONG;g++) {
+			if(genericbins[g]>0) { 
+				for(int s=0; s<specificnames.length; s++) { if(specificbins[g][s]>0) entries++; }}}
+		dfsalist = new int[entries][];
+		concealeddfsalist = new int[entries][];
+		int pos = 0;
+		for(int g=0;g<=KONG;g++) {
 			if(genericbins[g]>0) { 
 				for(int s=0; s<specificnames.length; s++) { 
 					if(specificbins[g][s]>0) {
@@ -1102,41 +1152,59 @@ public class TilePattern {
 		// it takes a bit of nesting to get here, but the creation cascade itself is rather simple
 		switch(g) {
 			case(SINGLE):{
-				int[] tiles = {ConditionalPath.SINGLE, s};
-				dfsalist = ArrayUtilities.add(dfsalist,tiles);
-				int[] ctiles = {ConditionalPath.CONCEALED_SINGLE, s};
-				concealeddfsalist = ArrayUtilities.add(concealeddfsalist,ctiles);
+				dfsalist[pos] = new int[] {ConditionalPath.SINGLE, s};
+				concealeddfsalist[pos] = new int[] {ConditionalPath.CONCEALED_SINGLE, s};
 				break; }
 			case(CONNECTED):{
-				int[] tiles = {ConditionalPath.CONNECTEDPAIR, s,s+1};
-				dfsalist = ArrayUtilities.add(dfsalist,tiles);								
-				int[] ctiles = {ConditionalPath.CONCEALED_CONNECTEDPAIR, s,s+1};
-				concealeddfsalist = ArrayUtilities.add(concealeddfsalist,ctiles);								
+				dfsalist[pos] = new int[] {ConditionalPath.CONNECTEDPAIR, s,s+1};
+				concealeddfsalist[pos] = new int[] {ConditionalPath.CONCEALED_CONNECTEDPAIR, s,s+1};
 				break; }
 			case(PAIR):{								
-				int[] tiles = {ConditionalPath.PAIR, s,s};
-				dfsalist = ArrayUtilities.add(dfsalist,tiles);								
-				int[] ctiles = {ConditionalPath.CONCEALED_PAIR, s,s};
-				concealeddfsalist = ArrayUtilities.add(concealeddfsalist,ctiles);								
+				dfsalist[pos] = new int[] {ConditionalPath.PAIR, s,s};
+				concealeddfsalist[pos] = new int[] {ConditionalPath.CONCEALED_PAIR, s,s};
 				break; }
 			case(CHOW):{
-				int[] tiles = {ConditionalPath.CHOW, s,s+1,s+2};
-				dfsalist = ArrayUtilities.add(dfsalist,tiles);								
-				int[] ctiles = {ConditionalPath.CONCEALED_CHOW, s,s+1,s+2};
-				concealeddfsalist = ArrayUtilities.add(concealeddfsalist,ctiles);								
+				dfsalist[pos] = new int[] {ConditionalPath.CHOW, s,s+1,s+2};
+				concealeddfsalist[pos] = new int[] {ConditionalPath.CONCEALED_CHOW, s,s+1,s+2};
 				break; }
 			case(PUNG):{
-				int[] tiles = {ConditionalPath.PUNG, s,s,s};
-				dfsalist = ArrayUtilities.add(dfsalist,tiles);								
-				int[] ctiles = {ConditionalPath.CONCEALED_PUNG, s,s,s};
-				concealeddfsalist = ArrayUtilities.add(concealeddfsalist,ctiles);								
+				dfsalist[pos] = new int[] {ConditionalPath.PUNG, s,s,s};
+				concealeddfsalist[pos] = new int[] {ConditionalPath.CONCEALED_PUNG, s,s,s};
 				break; }
 			case(KONG):{
-				int[] tiles = {ConditionalPath.KONG, s,s,s,s};
-				dfsalist = ArrayUtilities.add(dfsalist,tiles);								
-				int[] ctiles = {ConditionalPath.CONCEALED_KONG, s,s,s,s};
-				concealeddfsalist = ArrayUtilities.add(concealeddfsalist,ctiles);								
-				break; }}}}}}
+				dfsalist[pos] = new int[] {ConditionalPath.KONG, s,s,s,s};
+				concealeddfsalist[pos] = new int[] {ConditionalPath.CONCEALED_KONG, s,s,s,s};
+				break; }}
+		pos++; }}}}
+		dfsadirty = false;
+	}
+	
+	/**
+	 * two patterns are equal when they are of the same class and all their bins hold the same values
+	 */
+	public boolean equals(Object object)
+	{
+		if(object==this) return true;
+		if(object==null || object.getClass()!=getClass()) return false;
+		TilePattern other = (TilePattern) object;
+		if(genericbins.length!=other.genericbins.length) return false;
+		for(int g=0;g<genericbins.length;g++) {
+			if(genericbins[g]!=other.genericbins[g]) return false;
+			if(specificbins[g].length!=other.specificbins[g].length) return false;
+			for(int s=0;s<specificbins[g].length;s++) { if(specificbins[g][s]!=other.specificbins[g][s]) return false; }}
+		return true;
+	}
+
+	/**
+	 * hash code over the generic and specific bins, consistent with equals
+	 */
+	public int hashCode()
+	{
+		int hash = 1;
+		for(int g=0;g<genericbins.length;g++) {
+			hash = 31*hash + genericbins[g];
+			for(int s=0;s<specificbins[g].length;s++) { hash = 31*hash + specificbins[g][s]; }}
+		return hash;
 	}
 	
 	/**
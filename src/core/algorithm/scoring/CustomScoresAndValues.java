@@ -4,12 +4,20 @@
 
 package core.algorithm.scoring;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 
+import utilities.ArrayUtilities;
+import utilities.LRUCache;
 import core.algorithm.dynamic.DynamicFSA;
 import core.algorithm.dynamic.PointBreakdownObject;
 
@@ -22,6 +30,26 @@ public class CustomScoresAndValues {
 	DynamicFSA[] individualmultipliers;
 	
 	private PointBreakdownObject pointbreakdown = new PointBreakdownObject();
+	// when silent, scoring only computes the numbers and no point breakdown is built
+	private boolean silent = false;
+
+	// scores for dfsa lists that were scored before, shared by all copies of this ruleset (see HandScorer)
+	public static int SCORECACHESIZE = 16384;
+	private LRUCache<String,int[]> scorecache;
+
+	// only rules that could match a hand are run against it, see DynamicFSA.summarize. The counts are
+	// statistics only: when several threads score with the same ruleset, some counts may get lost.
+	// On by default, since it makes scoring whole hands faster (see TestDFSA.testPrefilter).
+	public static boolean prefiltering = true;
+	private long rulesevaluated = 0;
+	private long rulesskipped = 0;
+
+	// the compiled ruleset (see RulesetCompiler) is used instead of the definitions when it is newer than all of them
+	public static boolean compiledrules = true;
+	public static final String COMPILEDFILE = "ruleset.bin";
+	public static final String[] RULEFILES = {"winpatterns", "limithands", "tilepoints", "fullmultipliers", "individualmultipliers"};
+	private static final int COMPILEDMAGIC = 0x4D4A5253;
+	private static final int COMPILEDVERSION = 2;
 
 	// the following variables, methods, and load method, are all dynamically set through a config file
 	private int limit = 0;
@@ -75,20 +103,208 @@ public class CustomScoresAndValues {
 	 * constructor - creates a new scoring and values object based on the definitions from file, found through a template name
 	 * @param template the string that lets the class know which files to load - config/template.cf and config/template/[winpatterns|limithands|filepoints|fullmultipliers|individualmultipliers].txt
 	 */
-	public CustomScoresAndValues(String template) {
-		loadValues("config" + File.separator + template + ".cfg");
-		winpatterns		= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "winpatterns.txt", limit);
-		limithands		= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "limithands.txt", limit);
-		tilepoints		= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "tilepoints.txt", limit);
-		fullmultipliers	= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "fullmultipliers.txt", limit);
-		individualmultipliers = DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "individualmultipliers.txt", limit);
+	public CustomScoresAndValues(String template) { this(template, compiledrules); }
+
+	/**
+	 * constructor - creates a new scoring and values object, either from the compiled ruleset or from the definitions
+	 * @param template the template name
+	 * @param compiled whether to use the compiled ruleset, if there is one that is up to date with the definitions
+	 */
+	CustomScoresAndValues(String template, boolean compiled) {
+		if (!compiled || !isCompiledCurrent(template) || !loadCompiled(getCompiledFile(template))) {
+			loadValues("config" + File.separator + template + ".cfg");
+			winpatterns		= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "winpatterns.txt", limit);
+			limithands		= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "limithands.txt", limit);
+			tilepoints		= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "tilepoints.txt", limit);
+			fullmultipliers	= DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "fullmultipliers.txt", limit);
+			individualmultipliers = DynamicFSA.loadDFSAs("config" + File.separator + template + File.separator + "individualmultipliers.txt", limit);
+			optimize(); }
+		scorecache = new LRUCache<String,int[]>(SCORECACHESIZE);
 	}
+
+	/**
+	 * simplify all rules (see DynamicFSA.optimize). Win patterns, limit hands and full hand
+	 * multipliers only accept or reject a hand, the other rules add up path values.
+	 */
+	private void optimize() {
+		for(DynamicFSA dfsa: winpatterns) { dfsa.optimize(true); }
+		for(DynamicFSA dfsa: limithands) { dfsa.optimize(true); }
+		for(DynamicFSA dfsa: fullmultipliers) { dfsa.optimize(true); }
+		for(DynamicFSA dfsa: tilepoints) { dfsa.optimize(false); }
+		for(DynamicFSA dfsa: individualmultipliers) { dfsa.optimize(false); }}
+
+	/**
+	 * get the number of nodes and paths in every rule table
+	 * @return String[] array with a line per rule table
+	 */
+	public String[] getRuleSizes() {
+		DynamicFSA[][] rules = {winpatterns, limithands, tilepoints, fullmultipliers, individualmultipliers};
+		String[] sizes = new String[rules.length];
+		for(int r=0; r<rules.length; r++) {
+			int nodes = 0;
+			int paths = 0;
+			for(DynamicFSA dfsa: rules[r]) { nodes += dfsa.getNodeCount(); paths += dfsa.getPathCount(); }
+			sizes[r] = RULEFILES[r]+": "+rules[r].length+" rules, "+nodes+" nodes, "+paths+" paths"; }
+		return sizes; }
+
+	/**
+	 * get the rules that are matched as multisets, without walking the dfsa list (see DynamicFSA.isMultiset)
+	 * @return String[] array with the names of those rules
+	 */
+	public String[] getMultisetRules() {
+		String[] names = new String[0];
+		for(DynamicFSA[] rules: new DynamicFSA[][] {winpatterns, limithands, tilepoints, fullmultipliers, individualmultipliers}) {
+			for(DynamicFSA dfsa: rules) { if(dfsa.isMultiset()) { names = ArrayUtilities.add(names, dfsa.getName()); }}}
+		return names; }
+
+	/**
+	 * get the rules that value sets through value tables, without walking the dfsa list (see DynamicFSA.hasValueTables)
+	 * @return String[] array with the names of those rules
+	 */
+	public String[] getValueTableRules() {
+		String[] names = new String[0];
+		for(DynamicFSA[] rules: new DynamicFSA[][] {tilepoints, individualmultipliers}) {
+			for(DynamicFSA dfsa: rules) { if(dfsa.hasValueTables()) { names = ArrayUtilities.add(names, dfsa.getName()); }}}
+		return names; }
+
+	/**
+	 * get the compiled ruleset file for a template, as written by RulesetCompiler
+	 * @param template the template name
+	 * @return the file config/template/ruleset.bin
+	 */
+	public static File getCompiledFile(String template) { return new File("config" + File.separator + template + File.separator + COMPILEDFILE); }
+
+	/**
+	 * check whether the compiled ruleset for a template exists, and is newer than all the definitions it was compiled from
+	 * @param template the template name
+	 * @return true if the compiled ruleset can be used instead of the definitions
+	 */
+	public static boolean isCompiledCurrent(String template) {
+		File compiled = getCompiledFile(template);
+		if (!compiled.exists()) { return false; }
+		long modified = new File("config" + File.separator + template + ".cfg").lastModified();
+		for(String rules: RULEFILES) { modified = Math.max(modified, new File("config" + File.separator + template + File.separator + rules + ".txt").lastModified()); }
+		return compiled.lastModified()>modified; }
+
+	/**
+	 * loads the values and rules from a compiled ruleset
+	 * @param file the compiled ruleset file
+	 * @return true if the ruleset was loaded, false if it could not be read
+	 */
+	private boolean loadCompiled(File file) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt()!=COMPILEDMAGIC || in.readInt()!=COMPILEDVERSION) { return false; }
+			CustomScoresAndValues read = new CustomScoresAndValues();
+			read.startscore = in.readInt();
+			read.limit = in.readInt();
+			read.deadwallsize = in.readInt();
+			read.handsize = in.readInt();
+			read.scoremethod = in.readUTF();
+			read.eastdouble = in.readBoolean();
+			read.staywitheast = in.readBoolean();
+			read.foreward = in.readInt();
+			read.bidtimeout = in.readInt();
+			read.tileset = in.readUTF();
+			read.winpatterns = DynamicFSA.readDFSAs(in);
+			read.limithands = DynamicFSA.readDFSAs(in);
+			read.tilepoints = DynamicFSA.readDFSAs(in);
+			read.fullmultipliers = DynamicFSA.readDFSAs(in);
+			read.individualmultipliers = DynamicFSA.readDFSAs(in);
+			// only take the values over once the whole file has been read
+			copyValues(read);
+			tileset = read.tileset;
+			return true; }
+		catch (IOException e) { e.printStackTrace(); }
+		finally { try { if(in!=null) in.close(); } catch (IOException e) {} }
+		return false; }
+
+	/**
+	 * writes the values and rules of this ruleset in the compiled ruleset format
+	 * @param file the file to write to
+	 */
+	public void writeCompiled(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(COMPILEDMAGIC);
+			out.writeInt(COMPILEDVERSION);
+			out.writeInt(startscore);
+			out.writeInt(limit);
+			out.writeInt(deadwallsize);
+			out.writeInt(handsize);
+			out.writeUTF(scoremethod);
+			out.writeBoolean(eastdouble);
+			out.writeBoolean(staywitheast);
+			out.writeInt(foreward);
+			out.writeInt(bidtimeout);
+			out.writeUTF(tileset);
+			DynamicFSA.writeDFSAs(out, winpatterns);
+			DynamicFSA.writeDFSAs(out, limithands);
+			DynamicFSA.writeDFSAs(out, tilepoints);
+			DynamicFSA.writeDFSAs(out, fullmultipliers);
+			DynamicFSA.writeDFSAs(out, individualmultipliers); }
+		finally { out.close(); }}
+
+	/**
+	 * empty ruleset, to read a compiled ruleset into
+	 */
+	private CustomScoresAndValues() {}
 	
 	/**
 	 * copy constructor
 	 * @param scoring
 	 */
 	public CustomScoresAndValues(CustomScoresAndValues scoring) {
+		copyValues(scoring);
+		this.scorecache=scoring.scorecache;
+		
+		// This one needs to be remade, because pass-by-reference would otherwise do horrible things
+		this.pointbreakdown=new PointBreakdownObject();
+	}
+	/**
+	 * counts a rule as evaluated or skipped by the rule prefilter
+	 * @param possible whether the prefilter says the rule could match
+	 * @return whether the rule should be evaluated
+	 */
+	private boolean applies(boolean possible) {
+		if (!prefiltering || possible) { rulesevaluated++; return true; }
+		rulesskipped++;
+		return false; }
+
+	/**
+	 * get the number of rules that were run against a hand, over the lifetime of this object
+	 */
+	public long getRulesEvaluated() { return rulesevaluated; }
+
+	/**
+	 * get the number of rules that the rule prefilter skipped, over the lifetime of this object
+	 */
+	public long getRulesSkipped() { return rulesskipped; }
+
+	/**
+	 * checks that this ruleset can be played with
+	 * @return String[] array describing every problem found; empty if the ruleset is fine
+	 */
+	public String[] validate() {
+		String[] problems = new String[0];
+		if (limit<=0) { problems = ArrayUtilities.add(problems, "the limit has to be more than 0"); }
+		if (handsize<=0) { problems = ArrayUtilities.add(problems, "the hand size has to be more than 0"); }
+		if (deadwallsize<0) { problems = ArrayUtilities.add(problems, "the dead wall size can not be negative"); }
+		if (!scoremethod.equals("simple") && !scoremethod.equals("payed") && !scoremethod.equals("arithmetic")) { problems = ArrayUtilities.add(problems, "unknown score method \""+scoremethod+"\""); }
+		if (winpatterns.length==0) { problems = ArrayUtilities.add(problems, "there are no win patterns"); }
+		DynamicFSA[][] rules = {winpatterns, limithands, tilepoints, fullmultipliers, individualmultipliers};
+		for(int r=0; r<rules.length; r++) {
+			for(DynamicFSA dfsa: rules[r]) {
+				String problem = dfsa.validate();
+				if (problem!=null) { problems = ArrayUtilities.add(problems, RULEFILES[r]+": "+problem); }}}
+		return problems; }
+
+	/**
+	 * takes over the values and rules of another ruleset
+	 * @param scoring the ruleset to copy from
+	 */
+	private void copyValues(CustomScoresAndValues scoring) {
 		// values
 		this.bidtimeout=scoring.bidtimeout;
 		this.deadwallsize=scoring.deadwallsize;
@@ -98,17 +314,38 @@ public class CustomScoresAndValues {
 		this.limit=scoring.limit;
 		this.scoremethod=scoring.scoremethod;
 		this.startscore=scoring.startscore;
+		this.staywitheast=scoring.staywitheast;
 
 		// arrays
 		this.fullmultipliers=scoring.fullmultipliers;
 		this.individualmultipliers=scoring.individualmultipliers;
 		this.limithands=scoring.limithands;
 		this.tilepoints=scoring.tilepoints;
-		this.winpatterns=scoring.winpatterns;
-		
-		// This one needs to be remade, because pass-by-reference would otherwise do horrible things
-		this.pointbreakdown=new PointBreakdownObject();
-	}
+		this.winpatterns=scoring.winpatterns; }
+
+	/**
+	 * get the score cache for this ruleset
+	 * @return the cache shared by this ruleset and all its copies
+	 */
+	public LRUCache<String,int[]> getScoreCache() { return scorecache; }
+
+	/**
+	 * switch silent scoring on or off
+	 * @param silent true if scoring should not build a point breakdown
+	 */
+	public void setSilent(boolean silent) { this.silent = silent; }
+
+	/**
+	 * check whether scoring is silent
+	 * @return true if scoring does not build a point breakdown
+	 */
+	public boolean isSilent() { return silent; }
+
+	/**
+	 * the point breakdown to add to, or null when scoring silently
+	 */
+	private PointBreakdownObject breakdown() { return silent ? null : pointbreakdown; }
+
 	/**
 	 * clear the point breakdown
 	 */
@@ -121,11 +358,19 @@ public class CustomScoresAndValues {
 	 * @param playerwind player's wind
 	 * @return limitpoints if the tiles compose a limit hand, otherwise 0
 	 */
-	public int checkLimitHand(int[][] tiles, int windoftheround, int playerwind) {
+	public int checkLimitHand(int[][] tiles, int windoftheround, int playerwind) { return checkLimitHand(tiles,windoftheround,playerwind,breakdown()); }
+
+	/**
+	 * checks if a player has a limit hand, adding to a specific point breakdown
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
+	 */
+	public int checkLimitHand(int[][] tiles, int windoftheround, int playerwind, PointBreakdownObject points) {
+		long summary = DynamicFSA.summarize(tiles);
 		for(DynamicFSA dfsa: limithands) {
-			int val = dfsa.parse(tiles,pointbreakdown,windoftheround,playerwind);
+			if(!applies(dfsa.mayAccept(summary))) continue;
+			int val = dfsa.parse(tiles,summary,points,windoftheround,playerwind);
 			if (val>0) {
-				pointbreakdown.addLine(val+" points for limit hand \""+dfsa.getName()+"\"");
+				if(points!=null) points.addLine(val+" points for limit hand \""+dfsa.getName()+"\"");
 				return val; }}
 		return 0; }
 	
@@ -136,11 +381,19 @@ public class CustomScoresAndValues {
 	 * @param playerwind player's wind
 	 * @return the number of points this hand scores as a "win" pattern
 	 */
-	public int getWinPoints(int[][] tiles, int windoftheround, int playerwind) {
+	public int getWinPoints(int[][] tiles, int windoftheround, int playerwind) { return getWinPoints(tiles,windoftheround,playerwind,breakdown()); }
+
+	/**
+	 * get the winning points, adding to a specific point breakdown
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
+	 */
+	public int getWinPoints(int[][] tiles, int windoftheround, int playerwind, PointBreakdownObject points) {
 		int ret=0;
-		pointbreakdown.addLine("winpatterns:");
+		if(points!=null) points.addLine("winpatterns:");
+		long summary = DynamicFSA.summarize(tiles);
 		for(DynamicFSA dfsa: winpatterns) {
-			int val = dfsa.parse(tiles,pointbreakdown,windoftheround,playerwind);
+			if(!applies(dfsa.mayAccept(summary))) continue;
+			int val = dfsa.parse(tiles,summary,points,windoftheround,playerwind);
 			if(val>ret) { ret=val; }}
 		return ret; }
 	
@@ -151,10 +404,17 @@ public class CustomScoresAndValues {
 	 * @param playerwind player's wind
 	 * @return the number of basic tilepoints for this arrangement
 	 */
-	public int getTilePoints(int[][] tiles, int windoftheround, int playerwind) {
+	public int getTilePoints(int[][] tiles, int windoftheround, int playerwind) { return getTilePoints(tiles,windoftheround,playerwind,breakdown()); }
+
+	/**
+	 * get the basic tilepoints for a hand, adding to a specific point breakdown
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
+	 */
+	public int getTilePoints(int[][] tiles, int windoftheround, int playerwind, PointBreakdownObject points) {
 		int ret=0;
-		pointbreakdown.addLine("basic tilepoints:");
-		for(DynamicFSA dfsa: tilepoints) { ret += dfsa.parseValue(tiles,pointbreakdown,windoftheround,playerwind); }
+		if(points!=null) points.addLine("basic tilepoints:");
+		long summary = DynamicFSA.summarize(tiles);
+		for(DynamicFSA dfsa: tilepoints) { if(applies(dfsa.mayScore(summary))) { ret += dfsa.parseValue(tiles,points,windoftheround,playerwind); }}
 		return ret; }
 
 	/**
@@ -164,9 +424,15 @@ public class CustomScoresAndValues {
 	 * @param playerwind the player's wind
 	 * @return the number of multipliers this hand scores
 	 */
-	public int getMultipliers(int[][] tiles, int windoftheround, int playerwind, boolean winner) {
-		int imul = getIndividualMultipliers(tiles,windoftheround,playerwind);
-		if (winner) return imul + getFullMultipliers(tiles,windoftheround,playerwind);
+	public int getMultipliers(int[][] tiles, int windoftheround, int playerwind, boolean winner) { return getMultipliers(tiles,windoftheround,playerwind,winner,breakdown()); }
+
+	/**
+	 * get the multipliers for a hand, adding to a specific point breakdown
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
+	 */
+	public int getMultipliers(int[][] tiles, int windoftheround, int playerwind, boolean winner, PointBreakdownObject points) {
+		int imul = getIndividualMultipliers(tiles,windoftheround,playerwind,points);
+		if (winner) return imul + getFullMultipliers(tiles,windoftheround,playerwind,points);
 		else { return imul; }
 	}
 	
@@ -177,10 +443,11 @@ public class CustomScoresAndValues {
 	 * @param playerwind the player's wind
 	 * @return the number of multipliers for this arrangement of tiles
 	 */
-	private int getFullMultipliers(int[][] tiles, int windoftheround, int playerwind) {
-		pointbreakdown.addLine("full hand multipliers:");
+	private int getFullMultipliers(int[][] tiles, int windoftheround, int playerwind, PointBreakdownObject points) {
+		if(points!=null) points.addLine("full hand multipliers:");
 		int ret=0;
-		for(DynamicFSA dfsa: fullmultipliers) { ret += dfsa.parse(tiles,pointbreakdown,windoftheround,playerwind); }
+		long summary = DynamicFSA.summarize(tiles);
+		for(DynamicFSA dfsa: fullmultipliers) { if(applies(dfsa.mayAccept(summary))) { ret += dfsa.parse(tiles,summary,points,windoftheround,playerwind); }}
 		return ret; }
 
 	/**
@@ -190,17 +457,18 @@ public class CustomScoresAndValues {
 	 * @param playerwind the player's wind
 	 * @return the number of individual multipliers for this arrangement of tiles
 	 */
-	private int getIndividualMultipliers(int[][] tiles, int windoftheround, int playerwind) {
-		pointbreakdown.addLine("individual multipliers:");
+	private int getIndividualMultipliers(int[][] tiles, int windoftheround, int playerwind, PointBreakdownObject points) {
+		if(points!=null) points.addLine("individual multipliers:");
 		int ret=0;
-		for(DynamicFSA dfsa: individualmultipliers) { ret += dfsa.parseValue(tiles,pointbreakdown,windoftheround,playerwind); }
+		long summary = DynamicFSA.summarize(tiles);
+		for(DynamicFSA dfsa: individualmultipliers) { if(applies(dfsa.mayScore(summary))) { ret += dfsa.parseValue(tiles,points,windoftheround,playerwind); }}
 		return ret; }
 
 	/**
 	 * adds a line through a wrapper call
 	 * @param line
 	 */
-	public void addPointBreakdownLine(String line) { pointbreakdown.addLine(line); }
+	public void addPointBreakdownLine(String line) { if(!silent) pointbreakdown.addLine(line); }
 
 	/**
 	 * get the pointbreakdown as it happened, and reset it at the same time
@@ -218,19 +486,82 @@ public class CustomScoresAndValues {
 	 * @param multipliers the number of multipliers
 	 * @return the score based on these input parameters
 	 */
-	public int getFinalScore(int winpoints, int tilepoints, int multipliers) {
+	public int getFinalScore(int winpoints, int tilepoints, int multipliers) { return getFinalScore(winpoints,tilepoints,multipliers,breakdown()); }
+
+	/**
+	 * score computation, adding to a specific point breakdown
+	 * @param points the point breakdown to add to, or null if no breakdown is wanted
+	 */
+	public int getFinalScore(int winpoints, int tilepoints, int multipliers, PointBreakdownObject points) {
 		/**
 		 * TODO: can be made dynamic too
 		 **/
 		int score = (winpoints + tilepoints) * (int)Math.pow(2,multipliers);
 		// check whether the score exceeds the limit
 		if (score>limit) {
-			pointbreakdown.addLine("score exceeds limit - capped to "+limit+" points");
+			if(points!=null) points.addLine("score exceeds limit - capped to "+limit+" points");
 			return limit; }
 		// if no limit, return score normally
 		return score;
 	}
 	
+	/**
+	 * scores every list in a batch as a winning hand, one rule at a time: each rule is run against
+	 * all lists before the next rule is, and only the lists that have win points get their tilepoints
+	 * and multipliers computed. The outcome is what getWinPoints, getTilePoints, getMultipliers and
+	 * getFinalScore give for each list on its own; lists without win points score 0.
+	 * @param batch the lists to score, and the arrays to put the score components in
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's wind
+	 */
+	void scoreWinners(ScoreBatch batch, int windoftheround, int playerwind) { scoreBatch(batch, windoftheround, playerwind, true, true); }
+
+	/**
+	 * scores every list in a batch, one rule at a time, the same way scoreWinners does
+	 * @param batch the lists to score, and the arrays to put the score components in
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's wind
+	 * @param winner whether the full hand multipliers count
+	 * @param winnersonly true if only the lists with win points are scored any further, false if every list gets its full score
+	 */
+	void scoreBatch(ScoreBatch batch, int windoftheround, int playerwind, boolean winner, boolean winnersonly) {
+		int size = batch.size;
+		int[][][] lists = batch.lists;
+		long[] summaries = batch.summaries;
+		for(int i=0; i<size; i++) {
+			summaries[i] = DynamicFSA.summarize(lists[i]);
+			batch.winpoints[i] = 0;
+			batch.tilepoints[i] = 0;
+			batch.multipliers[i] = 0;
+			batch.scores[i] = 0; }
+
+		for(DynamicFSA dfsa: winpatterns) {
+			for(int i=0; i<size; i++) {
+				if(!applies(dfsa.mayAccept(summaries[i]))) continue;
+				int val = dfsa.parse(lists[i],summaries[i],null,windoftheround,playerwind);
+				if(val>batch.winpoints[i]) { batch.winpoints[i] = val; }}}
+
+		// only winning lists are scored any further; move them to the front
+		int winners = winnersonly ? 0 : size;
+		for(int i=0; i<size && winnersonly; i++) {
+			if(batch.winpoints[i]==0) continue;
+			if(i!=winners) {
+				int[][] list = lists[winners]; lists[winners] = lists[i]; lists[i] = list;
+				int position = batch.positions[winners]; batch.positions[winners] = batch.positions[i]; batch.positions[i] = position;
+				long summary = summaries[winners]; summaries[winners] = summaries[i]; summaries[i] = summary;
+				batch.winpoints[winners] = batch.winpoints[i]; batch.winpoints[i] = 0; }
+			winners++; }
+
+		for(DynamicFSA dfsa: tilepoints) {
+			for(int i=0; i<winners; i++) { if(applies(dfsa.mayScore(summaries[i]))) { batch.tilepoints[i] += dfsa.parseValue(lists[i],null,windoftheround,playerwind); }}}
+		for(DynamicFSA dfsa: individualmultipliers) {
+			for(int i=0; i<winners; i++) { if(applies(dfsa.mayScore(summaries[i]))) { batch.multipliers[i] += dfsa.parseValue(lists[i],null,windoftheround,playerwind); }}}
+		if(winner) {
+			for(DynamicFSA dfsa: fullmultipliers) {
+				for(int i=0; i<winners; i++) { if(applies(dfsa.mayAccept(summaries[i]))) { batch.multipliers[i] += dfsa.parse(lists[i],summaries[i],null,windoftheround,playerwind); }}}}
+		for(int i=0; i<winners; i++) { batch.scores[i] = getFinalScore(batch.winpoints[i],batch.tilepoints[i],batch.multipliers[i],null); }
+	}
+
 	/**
 	 * Determines the final score, given all scored tile points
 	 * @param tilepoints int[] array with player 1-4's tile points
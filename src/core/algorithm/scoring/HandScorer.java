@@ -19,7 +19,9 @@ import utilities.ArrayUtilities;
 import utilities.Timer;
 import core.algorithm.AcceptingFSA;
 import core.algorithm.TileTokenString;
+import core.algorithm.WinningHandTable;
 import core.algorithm.dynamic.ConditionalPath;
+import core.algorithm.dynamic.PointBreakdownObject;
 import core.algorithm.patterns.TilePattern;
 import core.game.models.Player;
 import core.game.models.datastructures.TileData;
@@ -30,6 +32,28 @@ public class HandScorer {
 	public static final int NORMAL = 1;
 	private CustomScoresAndValues scoring;
 	private static boolean debug = false;
+
+	// whether potential scores (scorePotential, scoreAll) are looked up in the ruleset's score cache.
+	// Off by default: even when half the patterns come back, as they do in a game, making the key and
+	// the lookup cost more than scoring the patterns as a batch (see TestDFSA.testScoreCache), and the
+	// AI players already keep the potential scores for the patterns they evaluated (see EvaluationState).
+	public static boolean caching = false;
+	// score cache entry value for a final score that has not been computed yet
+	private static final int UNSCORED = -1;
+
+	// how many rules the last score call ran against the hand, and how many the rule prefilter skipped
+	private long lastrulesevaluated = 0;
+	private long lastrulesskipped = 0;
+
+	// silent scoring builds no point breakdown; the breakdown for the last scored hand is regenerated when asked for
+	private boolean silent = true;
+	private ScoreResult lastresult = null;
+	private int lasthandtype;
+	private int lastwindoftheround;
+	private int lastplayerwind;
+
+	// the batch buffers for scoreAll; one per thread, so that hand scorers can still be shared
+	private static ThreadLocal<ScoreBatch> batches = new ThreadLocal<ScoreBatch>() { protected ScoreBatch initialValue() { return new ScoreBatch(); }};
 	
 /*
 	// TESTING
@@ -76,13 +100,34 @@ public class HandScorer {
 	/**
 	 * constructor
 	 */
-	public HandScorer(CustomScoresAndValues scoring) { this.scoring = new CustomScoresAndValues(scoring); }
+	public HandScorer(CustomScoresAndValues scoring) {
+		this.scoring = new CustomScoresAndValues(scoring);
+		this.scoring.setSilent(silent); }
 	
 	/**
-	 * get the last breakdown of the last scoring run
+	 * get the last breakdown of the last scoring run. In silent mode the breakdown is
+	 * regenerated by scoring the last hand again, this time with the breakdown switched on.
 	 * @return a string[] representing all the scoring components
 	 */
-	public String[] getLastPointBreakdown() { return scoring.getPointBreakdown().getBreakdown(); }	
+	public String[] getLastPointBreakdown() {
+		if(lastresult==null) { return new String[0]; }
+		if(!lastresult.hasBreakdown()) { return scoreDFSAlist(lasthandtype, lastresult.getDFSAlist(), lastwindoftheround, lastplayerwind, true).getBreakdown(); }
+		return lastresult.getBreakdown(); }	
+
+	/**
+	 * switch silent scoring on or off. Silent scoring (the default) only computes scores, without
+	 * building a point breakdown for every scored hand and every candidate pattern.
+	 * @param silent true for silent scoring
+	 */
+	public void setSilent(boolean silent) {
+		this.silent = silent;
+		scoring.setSilent(silent); }
+
+	/**
+	 * check whether this hand scorer scores silently
+	 * @return true if no point breakdown is built while scoring
+	 */
+	public boolean isSilent() { return silent; }
 
 	/**
 	 * returns the CustomScoresAndValues object
@@ -101,13 +146,36 @@ public class HandScorer {
 	 * @return the number of points this winning hand has
 	 */
 	public int score(int handtype, TileData tiledata,  int windoftheround, int playerwind) {
+		long rulesevaluated = scoring.getRulesEvaluated();
+		long rulesskipped = scoring.getRulesSkipped();
+		ScoreResult result = score(handtype, tiledata, windoftheround, playerwind, !silent);
+
+		// remember this hand, so its point breakdown can be generated later
+		lastresult = result;
+		lasthandtype = handtype;
+		lastwindoftheround = windoftheround;
+		lastplayerwind = playerwind;
+		lastrulesevaluated = scoring.getRulesEvaluated() - rulesevaluated;
+		lastrulesskipped = scoring.getRulesSkipped() - rulesskipped;
+		return result.getScore();
+	}
+
+	/**
+	 * Scores a hand without changing anything in this hand scorer, so that one hand scorer can
+	 * score hands for any number of threads at the same time.
+	 * @param handtype either WINNER or NORMAL
+	 * @param tiledata the player's tiles
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @param breakdown whether the result should have a point breakdown
+	 * @return the score, and what it is made up of
+	 */
+	public ScoreResult score(int handtype, TileData tiledata, int windoftheround, int playerwind, boolean breakdown) {
 		int[] concealed = tiledata.getConcealed();
 		int[] open = tiledata.getOpen();
 		int[] sets = tiledata.getSets();
 		int[] bonus = tiledata.getBonus();
 		
-		boolean winner = (handtype==HandScorer.WINNER);
-
 		// first, move all concealed kongs back from open to concealed!
 		int opos = 0;
 		for(int s=0; s<sets.length;s++) {
@@ -127,9 +195,10 @@ public class HandScorer {
 if(debug) System.out.println("open/setst:\n"+ArrayUtilities.arrayToString(open)+"\n"+ArrayUtilities.arrayToString(sets));
 if(debug) System.out.println("opendfsalist:\n"+ArrayUtilities.arrayToString(opendfsalist));
 
-		// concealed pattern
+		// concealed pattern, from a sorted copy so that the caller's tiles are left as they are
+		concealed = concealed.clone();
 		Arrays.sort(concealed);
- 		TilePattern[] potentialpatterns = AcceptingFSA.parseConcealed(new TilePattern(), new TileTokenString(concealed), AcceptingFSA.ALL_MASK);
+ 		TilePattern[] potentialpatterns = AcceptingFSA.parse(new TileTokenString(concealed), new int[0], new int[0], AcceptingFSA.ALL_MASK);
 
 if(debug) { System.out.println("possible concealed patterns:\n"); for(TilePattern t: potentialpatterns) { System.out.println(t.toString()); }}
  		
@@ -147,90 +216,110 @@ if(debug) System.out.println("concealeddfsalist:\n"+ArrayUtilities.arrayToString
 
 if(debug) System.out.println("total dfsalist:\n"+ArrayUtilities.arrayToString(dfsalist));
 
-		// clear the point breakdown
-		scoring.clearPointBreakdown();
+		return scoreDFSAlist(handtype, dfsalist, windoftheround, playerwind, breakdown);
+	}
+
+	/**
+	 * scores the final dfsa list for a hand
+	 * @param handtype either WINNER or NORMAL
+	 * @param dfsalist the merged open, concealed and bonus dfsa list
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @param breakdown whether the result should have a point breakdown
+	 * @return the final score for this hand, and what it is made up of
+	 */
+	private ScoreResult scoreDFSAlist(int handtype, int[][] dfsalist, int windoftheround, int playerwind, boolean breakdown)
+	{
+		boolean winner = (handtype==HandScorer.WINNER);
+		PointBreakdownObject points = breakdown ? new PointBreakdownObject() : null;
 		
 		int winpoints=0;
-		if (handtype==WINNER) { winpoints = scoring.getWinPoints(dfsalist,windoftheround,playerwind); }
-		int tilepoints = scoring.getTilePoints(dfsalist,windoftheround,playerwind);
-		int multipliers = scoring.getMultipliers(dfsalist,windoftheround,playerwind,winner);
-		int finalscore = scoring.getFinalScore(winpoints,tilepoints,multipliers);
+		if (handtype==WINNER) { winpoints = scoring.getWinPoints(dfsalist,windoftheround,playerwind,points); }
+		int tilepoints = scoring.getTilePoints(dfsalist,windoftheround,playerwind,points);
+		int multipliers = scoring.getMultipliers(dfsalist,windoftheround,playerwind,winner,points);
+		int finalscore = scoring.getFinalScore(winpoints,tilepoints,multipliers,points);
 		
-		return finalscore;
+		return new ScoreResult(finalscore, winpoints, tilepoints, multipliers, (points==null) ? null : points.getBreakdown(), dfsalist);
 	}
 	
 	/**
-	 * determines the best pattern that can be made with the concealed tiles in a hand
+	 * determines the best pattern that can be made with the concealed tiles in a hand. This is the
+	 * highest scoring pattern, and of those the "coolest" one (see getCoolness), and of those the
+	 * last one.
 	 * @param handtype either WINNER or NORMAL
 	 * @param potentialpatterns TilePattern[] array representing the set of all possible ways to combine the hand tiles
 	 * @param locked the face-up tiles
 	 * @param lockedsets int[] array representing which sets the open tiles comprise
 	 * @param windoftheround the wind of the round
 	 * @param playerwind the player's own wind
-	 * @return the best scoring pattern from the bunch to go for
+	 * @return int[] {best position, its score}
 	 */
 	private int[] getBestPattern(int handtype, TilePattern[] potentialpatterns, TilePattern locked, int[] lockedsets, int[] bonus, int windoftheround, int playerwind)
 	{
 		boolean debug = false;
+		boolean winner = (handtype==HandScorer.WINNER);
+		int[][] lockeddfsalist = locked.getDFSAlist(false);
+
+		// all candidates are scored as a batch (see scoreAll), every one of them in full
+		ScoreBatch batch = batches.get();
+		batch.reset(potentialpatterns.length);
+		for(int i=0; i<potentialpatterns.length; i++) { batch.add(ArrayUtilities.mergeIntIntArrays(lockeddfsalist,potentialpatterns[i].getDFSAlist(true)), i); }
+		scoring.scoreBatch(batch, windoftheround, playerwind, winner, false);
 		int[] scores = new int[potentialpatterns.length];
-		for(int i=0; i<potentialpatterns.length; i++) {
-			/**
-			 * This uses the DFA system quite a bit - can we tighten this somehow?
-			 **/
-			int[][] dfsalist = ArrayUtilities.mergeIntIntArrays(locked.getDFSAlist(false),potentialpatterns[i].getDFSAlist(true));
-			int winpoints = scoring.getWinPoints(dfsalist,windoftheround,playerwind);
-			int tilepoints = scoring.getTilePoints(dfsalist,windoftheround,playerwind);
-			int multipliers = scoring.getMultipliers(dfsalist,windoftheround,playerwind,(handtype==HandScorer.WINNER));
-			int score = scoring.getFinalScore(winpoints, tilepoints, multipliers);
-			scores[i] = score; }
-		
-		// filter for highest score
+		for(int b=0; b<batch.size; b++) { scores[batch.positions[b]] = batch.scores[b]; }
+		batch.release();
+
 		int highscore = -1;
-		for(int i=0; i<potentialpatterns.length; i++) { if (scores[i]>highscore) { highscore = scores[i]; }}
-		if(debug) System.out.println("highscore: "+highscore);
-		
-		// filter hand for patterns with this score
-		int[] positions = new int[0];
-		for(int i=0; i<scores.length; i++) { if (scores[i]==highscore) { positions = ArrayUtilities.add(positions,i); }}
-		
-		if(debug) System.out.println();
-		if(debug) System.out.println("filtered hand from size "+potentialpatterns.length+" to "+positions.length+":");
-		if(debug) System.out.println(ArrayUtilities.arrayToString(positions));
-		
-		// score all "highest" patterns on how cool they are, based on the fact that set>kong>pung>chow>pair>connectedpair>single
-		int[] binscores = new int[positions.length];
-		for(int p=0; p<positions.length; p++) {
-			String pointstring = "";
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.SET);
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.KONG);
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.PUNG);
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.CHOW);
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.PAIR);
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.CONNECTED);
-			pointstring += potentialpatterns[positions[p]].getGenericValue(TilePattern.SINGLE);
-			binscores[p] = Integer.valueOf(pointstring);
-			if(debug) System.out.println("["+positions[p]+"] - score: "+scores[positions[p]]+" - coolness: "+binscores[p]+" - "+potentialpatterns[positions[p]].toString());	
-		}
-
-		if(debug) System.out.println("computed binary scoring for this "+positions.length+" element array:");
-		if(debug) System.out.println(ArrayUtilities.arrayToString(binscores));
-
-		// now we get THAT highest score
-		int subhighscore = 0;
-		for(int i=0; i<binscores.length; i++) { if (binscores[i]>subhighscore) { subhighscore = binscores[i]; }}
-
-		if(debug) System.out.println("highest 6-bit int score: "+subhighscore);
-
-		// and then we can reasonably safely pick the first pattern that matches this score.
-		int position =-1;
-		for(int i=0; i<binscores.length; i++) { if (binscores[i]==subhighscore) { position = positions[i]; }}
+		int position = -1;
+		int coolness = 0;
+		for(int i=0; i<potentialpatterns.length; i++) {
+			int score = scores[i];
+			if (score<highscore) continue;
+
+			// for equal scores, pick the coolest pattern, and of those the last one
+			int c = getCoolness(potentialpatterns[i]);
+			if (score>highscore || c>coolness || (c==coolness && i>position)) {
+				highscore = score;
+				position = i;
+				coolness = c; }
+			if(debug) System.out.println("["+i+"] - score: "+score+" - coolness: "+c+" - "+potentialpatterns[i].toString()); }
 
 		if(debug) System.out.println("best position : "+position+" with highscore "+highscore);
 
 		// so finally, we can return the "best position and highscore" values
 		int[] result = {position, highscore};
 		return result;
-	}	
+	}
+
+	/**
+	 * scores a pattern on how cool it is, based on the fact that set>kong>pung>chow>pair>connectedpair>single
+	 * @param pattern the pattern to score
+	 * @return the coolness of the pattern; higher is cooler
+	 */
+	private static int getCoolness(TilePattern pattern)
+	{
+		String pointstring = "";
+		pointstring += pattern.getGenericValue(TilePattern.SET);
+		pointstring += pattern.getGenericValue(TilePattern.KONG);
+		pointstring += pattern.getGenericValue(TilePattern.PUNG);
+		pointstring += pattern.getGenericValue(TilePattern.CHOW);
+		pointstring += pattern.getGenericValue(TilePattern.PAIR);
+		pointstring += pattern.getGenericValue(TilePattern.CONNECTED);
+		pointstring += pattern.getGenericValue(TilePattern.SINGLE);
+		return Integer.valueOf(pointstring);
+	}
+
+	/**
+	 * get the number of rules that were run against the candidate patterns and the final pattern in the last score call
+	 * @return the number of evaluated rules
+	 */
+	public long getLastRulesEvaluated() { return lastrulesevaluated; }
+
+	/**
+	 * get the number of rules that the rule prefilter skipped in the last score call
+	 * @return the number of skipped rules
+	 */
+	public long getLastRulesSkipped() { return lastrulesskipped; }
 
 	/**
 	 * Scores a non-winning hand
@@ -255,20 +344,87 @@ if(debug) System.out.println("total dfsalist:\n"+ArrayUtilities.arrayToString(df
 	 * @return the number of points this non-winning hand has
 	 */
 	public int scoreWinner(Player player, int windoftheround) throws IllegalWinDeclaredException {
-		if(!legalWin(player)) { throw new IllegalWinDeclaredException(player.getUID(), player.getName(), windoftheround); }
+		if(!legalWin(player, windoftheround)) { throw new IllegalWinDeclaredException(player.getUID(), player.getName(), windoftheround); }
 		return score(WINNER, player.getTiles(), windoftheround, player.getWind());
 	}
 
+	/**
+	 * Scores a non-winning hand, without changing anything in this hand scorer
+	 * @param player the player whose hand is scored
+	 * @param windoftheround the wind of the round
+	 * @param breakdown whether the result should have a point breakdown
+	 * @return the score this non-winning hand has, and what it is made up of
+	 */
+	public ScoreResult scoreNormal(Player player, int windoftheround, boolean breakdown) {
+		return score(NORMAL, player.getTiles(), windoftheround, player.getWind(), breakdown);
+	}
+
+	/**
+	 * Scores a winning hand, without changing anything in this hand scorer
+	 * @param player the player who won
+	 * @param windoftheround the wind of the round
+	 * @param breakdown whether the result should have a point breakdown
+	 * @return the score this winning hand has, and what it is made up of
+	 */
+	public ScoreResult scoreWinner(Player player, int windoftheround, boolean breakdown) throws IllegalWinDeclaredException {
+		if(!legalWin(player, windoftheround)) { throw new IllegalWinDeclaredException(player.getUID(), player.getName(), windoftheround); }
+		return score(WINNER, player.getTiles(), windoftheround, player.getWind(), breakdown);
+	}
+
+	/**
+	 * Verifies whether or not a player is trying to win with a pattern that cannot actually
+	 * be won with, in the current round.
+	 * @param player the player claiming the win
+	 * @return true if the tiles constitute a winning pattern
+	 */
+	public boolean legalWin(Player player) { return legalWin(player, player.getWindOfTheRound()); }
+
 	/**
 	 * Verifies whether or not a player is trying to win with a pattern that cannot actually
-	 * be won with.
+	 * be won with. Four sets and a pair are recognised straight away (see WinningHandTable);
+	 * any other hand is a legal win if one of the ways to read it is a limit hand or matches
+	 * a win pattern of this ruleset.
 	 * @param player the player claiming the win
+	 * @param windoftheround the wind of the round
 	 * @return true if the tiles constitute a winning pattern
 	 */
-	public boolean legalWin(Player player)
+	public boolean legalWin(Player player, int windoftheround) { return legalWin(player.getTiles(), windoftheround, player.getWind()); }
+
+	/**
+	 * Verifies whether a set of tiles can be won with (see legalWin(Player, int))
+	 * @param tiles the tiles that are claimed to win
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @return true if the tiles constitute a winning pattern
+	 */
+	public boolean legalWin(TileData tiles, int windoftheround, int playerwind)
 	{
-		// TODO: CODE GOES HERE
-		return true;
+		if(WinningHandTable.isWinningHand(tiles.getConcealed(), tiles.getSets())) { return true; }
+
+		// concealed kongs are read along with the concealed tiles, the other sets are face up
+		int[] concealed = ArrayUtilities.copy(tiles.getConcealed());
+		int[] open = tiles.getOpen();
+		int[] sets = tiles.getSets();
+		int[] faceup = new int[0];
+		int[] faceupsets = new int[0];
+		int opos = 0;
+		for(int set: sets) {
+			int size = TilePattern.getSetSize(set);
+			int[] settiles = new int[size];
+			System.arraycopy(open, opos, settiles, 0, size);
+			if(set==TilePattern.CONCEALED_KONG) { concealed = ArrayUtilities.mergeIntArrays(concealed, settiles); }
+			else {
+				faceup = ArrayUtilities.mergeIntArrays(faceup, settiles);
+				faceupsets = ArrayUtilities.add(faceupsets, set); }
+			opos += size; }
+		int[][] lockeddfsalist = AcceptingFSA.parseOpen(new TilePattern(), faceup, faceupsets).getDFSAlist(false);
+		for(int tile: tiles.getBonus()) { lockeddfsalist = ArrayUtilities.add(lockeddfsalist, new int[] {ConditionalPath.SINGLE, tile}); }
+
+		Arrays.sort(concealed);
+		for(TilePattern candidate: AcceptingFSA.parse(new TileTokenString(concealed), new int[0], new int[0])) {
+			int[][] dfsalist = ArrayUtilities.mergeIntIntArrays(lockeddfsalist, candidate.getDFSAlist(true));
+			if(scoring.checkLimitHand(dfsalist, windoftheround, playerwind, null)>0 || scoring.getWinPoints(dfsalist, windoftheround, playerwind, null)>0) { return true; }}
+		return false;
 	}
 
 	/**
@@ -282,16 +438,113 @@ if(debug) System.out.println("total dfsalist:\n"+ArrayUtilities.arrayToString(df
 	{
 		Timer.time("scpot");
 		int[][] dfsalist = potentialpattern.getDFSAlist(false);
-		int winpoints = scoring.getWinPoints(dfsalist,windoftheround,playerwind);
+		if(caching) {
+			// only a pattern that is a win pattern gets its full score computed
+			int[] scores = getCachedScores(dfsalist, WINNER, windoftheround, playerwind, false);
+			if (scores[0]>0) {
+				if (scores[1]==UNSCORED) { scores = getCachedScores(dfsalist, WINNER, windoftheround, playerwind, true); }
+				return scores[1]; }
+			potentialpattern.setScore(0);
+			return 0; }
+		int winpoints = scoring.getWinPoints(dfsalist,windoftheround,playerwind,null);
 		if (winpoints>0) {
-			int tilepoints = scoring.getTilePoints(dfsalist,windoftheround,playerwind);
+			int tilepoints = scoring.getTilePoints(dfsalist,windoftheround,playerwind,null);
 			boolean winner = true;
-			int multipliers = scoring.getMultipliers(dfsalist,windoftheround,playerwind,winner);
-			int finalscore = scoring.getFinalScore(winpoints,tilepoints,multipliers);
+			int multipliers = scoring.getMultipliers(dfsalist,windoftheround,playerwind,winner,null);
+			int finalscore = scoring.getFinalScore(winpoints,tilepoints,multipliers,null);
 			return finalscore; }
 		potentialpattern.setScore(0);
 		return 0;
 	}
 
+	/**
+	 * Determines how much each of a number of patterns is worth, were a player to go out on it
+	 * together with a set of locked tiles. This gives the same scores as calling scorePotential
+	 * for every candidate merged with the locked sets, but the candidates are scored as a batch:
+	 * every rule is run against all candidates before the next rule is, and the buffers for the
+	 * batch are reused from one call to the next.
+	 * @param candidates the potential "win" patterns
+	 * @param locked the face-up sets that go with every candidate, or null if there are none
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @return int[] array with the score for every candidate, 0 if it is not a winning pattern
+	 */
+	public int[] scoreAll(TilePattern[] candidates, TilePattern locked, int windoftheround, int playerwind)
+	{
+		int[] scores = new int[candidates.length];
+		int[][] lockeddfsalist = (locked==null) ? new int[0][] : locked.getDFSAlist(false);
+		ScoreBatch batch = batches.get();
+		batch.reset(candidates.length);
+		for(int c=0; c<candidates.length; c++) {
+			int[][] dfsalist = candidates[c].getDFSAlist(false);
+			if(lockeddfsalist.length>0) { dfsalist = ArrayUtilities.mergeIntIntArrays(lockeddfsalist,dfsalist); }
+			if(caching) {
+				int[] cached = scoring.getScoreCache().get(cacheKey(dfsalist, WINNER, windoftheround, playerwind));
+				if(cached!=null && (cached[0]==0 || cached[1]!=UNSCORED)) {
+					scores[c] = (cached[0]>0) ? cached[1] : 0;
+					continue; }}
+			batch.add(dfsalist, c); }
+
+		scoring.scoreWinners(batch, windoftheround, playerwind);
+		for(int b=0; b<batch.size; b++) {
+			scores[batch.positions[b]] = batch.scores[b];
+			if(caching) {
+				int[] computed = {batch.winpoints[b], (batch.winpoints[b]>0) ? batch.scores[b] : UNSCORED};
+				scoring.getScoreCache().put(cacheKey(batch.lists[b], WINNER, windoftheround, playerwind), computed); }}
+		batch.release();
+
+		// like scorePotential, patterns that are no winning pattern get their score set to 0
+		for(int c=0; c<candidates.length; c++) { if(scores[c]==0) { candidates[c].setScore(0); }}
+		return scores;
+	}
+
 	public CustomScoresAndValues getCustomScoresAndValues() { return scoring; }
+
+	/**
+	 * get the score cache statistics for this hand scorer's ruleset
+	 * @return the hits, misses and evictions of the score cache
+	 */
+	public String getScoreCacheStatistics() { return scoring.getScoreCache().toString(); }
+
+	/**
+	 * looks up the scores for a dfsa list in the ruleset's score cache, computing (and caching)
+	 * them if they are not known yet. These scores are computed without a point breakdown.
+	 * @param dfsalist the (merged) dfsa list to score
+	 * @param handtype either WINNER or NORMAL
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @param full whether the final score is needed, or only the win points
+	 * @return int[] {winpoints, final score}, where the final score may be UNSCORED if full was false
+	 */
+	private int[] getCachedScores(int[][] dfsalist, int handtype, int windoftheround, int playerwind, boolean full)
+	{
+		String key = cacheKey(dfsalist, handtype, windoftheround, playerwind);
+		int[] scores = scoring.getScoreCache().get(key);
+		if (scores!=null && (scores[1]!=UNSCORED || !full)) { return scores; }
+
+		int winpoints = (scores==null) ? scoring.getWinPoints(dfsalist,windoftheround,playerwind,null) : scores[0];
+		int finalscore = UNSCORED;
+		if (full) {
+			int tilepoints = scoring.getTilePoints(dfsalist,windoftheround,playerwind,null);
+			int multipliers = scoring.getMultipliers(dfsalist,windoftheround,playerwind,(handtype==WINNER),null);
+			finalscore = scoring.getFinalScore(winpoints,tilepoints,multipliers,null); }
+		// cached entries are never modified, so they can be handed out to other threads safely
+		int[] computed = {winpoints, finalscore};
+		scoring.getScoreCache().put(key, computed);
+		return computed;
+	}
+
+	/**
+	 * encodes a dfsa list, in order, together with the winds and hand type. The rules are
+	 * walked through the list in order, so two lists only share a key if they are identical.
+	 */
+	private static String cacheKey(int[][] dfsalist, int handtype, int windoftheround, int playerwind)
+	{
+		StringBuilder key = new StringBuilder(4*dfsalist.length+4);
+		key.append((char)handtype).append((char)windoftheround).append((char)playerwind);
+		for(int[] entry: dfsalist) {
+			key.append((char)entry.length);
+			for(int value: entry) { key.append((char)value); }}
+		return key.toString();
+	}
 }
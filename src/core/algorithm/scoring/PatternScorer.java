@@ -160,18 +160,49 @@ public class PatternScorer {
 	 * @return the set of scores corresponding to the pathpatterns
 	 */
 	public double[] determinePatternEase(RequiredTilePattern[] requiredpatterns, TilePattern[] pathpatterns, AvailableTilePattern available, int[] concealed, int windoftheround, int playerwind, int wallsize, int prevplayerhandsize)
+	{
+		double tilescores[] = scorePotentials(pathpatterns, windoftheround, playerwind);
+		return determinePatternEase(requiredpatterns, pathpatterns, tilescores, available, concealed, windoftheround, playerwind, wallsize, prevplayerhandsize);
+	}
+
+	/**
+	 * Determines the potential score for each path pattern, as if it were a winning hand
+	 * @param pathpatterns the set of patterns that are to be considered as play-for pattern
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @return the potential scores corresponding to the pathpatterns
+	 */
+	public double[] scorePotentials(TilePattern[] pathpatterns, int windoftheround, int playerwind)
 	{
 		if(timed) Timer.time("score potentials");
-		// determine the scores for all patterns, and record what the highest seen score is
-		double tilescores[] = new double[requiredpatterns.length];
-		double highesttilepoints = 0;
+		double tilescores[] = new double[pathpatterns.length];
+		int[] scores = scoring.scoreAll(pathpatterns, null, windoftheround, playerwind);
+		for(int p=0; p<pathpatterns.length; p++) { tilescores[p] = scores[p]; }
+		if(timed) System.out.println("["+new Date().getTime()+"] "+Timer.getTime("score potentials"));
+		return tilescores;
+	}
 
+	/**
+	 * Analyses each difference pattern and scores it in terms of how easy it is to
+	 * go for, using already computed potential scores for the path patterns
+	 *
+	 * @param requiredpatterns the patterns representing which tiles are required to get from this hand to the pathpatterns
+	 * @param pathpatterns the set of patterns that are to be considered as play-for pattern
+	 * @param tilescores the potential scores for the pathpatterns, as computed by scorePotentials
+	 * @param available the set of potentially available tiles for a player
+	 * @param concealed player's concealed tiles
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @param wallsize the size of the wall, minus the dead wall
+	 * @param prevplayerhandsize the number of the previous player, used for determining chow likelihood
+	 * @return the set of scores corresponding to the pathpatterns
+	 */
+	public double[] determinePatternEase(RequiredTilePattern[] requiredpatterns, TilePattern[] pathpatterns, double[] tilescores, AvailableTilePattern available, int[] concealed, int windoftheround, int playerwind, int wallsize, int prevplayerhandsize)
+	{
+		// record what the highest seen score is
+		double highesttilepoints = 0;
 		for(int p=0; p<requiredpatterns.length; p++) {
-			double tilescore = scoring.scorePotential(pathpatterns[p], windoftheround, playerwind);
-			tilescores[p] = tilescore;
-			if (tilescore>highesttilepoints) highesttilepoints = tilescore; }
-		
-		if(timed) System.out.println("["+new Date().getTime()+"] "+Timer.getTime("score potentials"));
+			if (tilescores[p]>highesttilepoints) highesttilepoints = tilescores[p]; }
 		
 		if(timed) Timer.time("rank generation");
 		double[] scores = new double[requiredpatterns.length];
@@ -0,0 +1,54 @@
+/**
+ * This class compiles the ruleset definitions for a template (config/template.cfg and the
+ * rule files in config/template/) into a single binary file, config/template/ruleset.bin,
+ * holding the fully loaded and compiled ruleset. CustomScoresAndValues reads this file
+ * instead of the definitions whenever it is newer than all of them, which saves parsing
+ * the text files and looking up all the rule nodes by name for every new table.
+ *
+ * usage: java core.algorithm.scoring.RulesetCompiler [template...]
+ * (templates default to "standard", and are looked for relative to the working directory)
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm.scoring;
+
+import java.io.File;
+import java.io.IOException;
+
+public class RulesetCompiler {
+
+	public static void main(String[] args)
+	{
+		if (args.length==0) { args = new String[] {"standard"}; }
+		boolean failed = false;
+		for(String template: args) { failed |= !compile(template); }
+		if (failed) { System.exit(1); }
+	}
+
+	/**
+	 * compiles the ruleset definitions for a template
+	 * @param template the template name
+	 * @return true if the compiled ruleset was written
+	 */
+	public static boolean compile(String template)
+	{
+		if (!new File("config" + File.separator + template + ".cfg").exists()) {
+			System.out.println("no ruleset definitions found for template \""+template+"\"");
+			return false; }
+		long millis = System.currentTimeMillis();
+		CustomScoresAndValues scoring = new CustomScoresAndValues(template, false);
+		File file = CustomScoresAndValues.getCompiledFile(template);
+		try { scoring.writeCompiled(file); }
+		catch (IOException e) {
+			e.printStackTrace();
+			return false; }
+		System.out.println("compiled \""+template+"\" into "+file.getPath()+" ("+file.length()+" bytes, "+(System.currentTimeMillis()-millis)+"ms)");
+		return true;
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * This class keeps the current ruleset for a template, and reloads it when its definitions
+ * change on disk. A background thread watches config/template.cfg and the files in
+ * config/template/; when any of them changes, the ruleset is loaded again, validated,
+ * and only published if it is fine. Anything that went wrong is printed, and the
+ * previous ruleset stays in use.
+ *
+ * Published rulesets are snapshots: they are never changed after they are published
+ * (scoring happens on HandScorer copies), so whoever took a snapshot can keep using it
+ * for as long as it needs to - a game takes one at the start of every hand - while the
+ * next hand picks up whatever ruleset is current by then.
+ *
+ * Rulesets are loaded through the RulesetRegistry, which also keeps one manager per template,
+ * so any number of tables can share the same rulesets and the same watcher.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm.scoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RulesetManager {
+
+	public static boolean debug = false;
+
+	// how long to wait for a burst of file changes (an editor saving, several files being copied) to end before reloading
+	public static long SETTLETIME = 250;
+
+	private String template;
+	private AtomicReference<CustomScoresAndValues> current = new AtomicReference<CustomScoresAndValues>();
+	private WatchService watcher;
+	private Thread thread;
+
+	// statistics
+	private volatile int reloads = 0;
+	private volatile int rejected = 0;
+
+	/**
+	 * constructor - loads the ruleset for a template. Watching for changes only starts once start() is called.
+	 * @param template the template name, see CustomScoresAndValues
+	 */
+	public RulesetManager(String template) {
+		this.template = template;
+		current.set(RulesetRegistry.getRuleset(template)); }
+
+	/**
+	 * get the current ruleset snapshot. It must not be changed; score through a HandScorer.
+	 * @return the most recently published ruleset
+	 */
+	public CustomScoresAndValues getRuleset() { return current.get(); }
+
+	/**
+	 * get the template this manager loads
+	 * @return the template name
+	 */
+	public String getTemplate() { return template; }
+
+	/**
+	 * start watching the ruleset definitions for changes
+	 */
+	public synchronized void start() {
+		if (thread!=null) return;
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			new File("config").toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			new File("config" + File.separator + template).toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE); }
+		catch (IOException e) {
+			e.printStackTrace();
+			return; }
+		thread = new Thread(new Runnable() { public void run() { watch(); }}, "ruleset watcher ("+template+")");
+		thread.setDaemon(true);
+		thread.start(); }
+
+	/**
+	 * stop watching the ruleset definitions
+	 */
+	public synchronized void stop() {
+		if (thread==null) return;
+		try { watcher.close(); } catch (IOException e) {}
+		thread = null; }
+
+	/**
+	 * load the ruleset again, and publish it if it validates
+	 * @return true if a new ruleset was published
+	 */
+	public boolean reload() {
+		CustomScoresAndValues ruleset;
+		try { ruleset = RulesetRegistry.getRuleset(template); }
+		catch (RuntimeException e) {
+			// the definition parsing throws on malformed numbers, for instance
+			System.out.println("ruleset \""+template+"\" could not be loaded: "+e);
+			rejected++;
+			return false; }
+		String[] problems = ruleset.validate();
+		if (problems.length>0) {
+			System.out.println("ruleset \""+template+"\" was changed, but is not valid - still using the previous ruleset:");
+			for(String problem: problems) { System.out.println("  "+problem); }
+			rejected++;
+			return false; }
+		// the definitions were saved, but not changed
+		if (ruleset==current.get()) { return false; }
+		current.set(ruleset);
+		reloads++;
+		if(debug) System.out.println("ruleset \""+template+"\" reloaded");
+		return true; }
+
+	/**
+	 * get the reload statistics
+	 * @return the number of published and rejected reloads
+	 */
+	public String toString() { return "ruleset \""+template+"\": "+reloads+" reloads, "+rejected+" rejected"; }
+
+	/**
+	 * the watcher loop: wait for a change to one of the ruleset files, wait for the changes to settle, then reload
+	 */
+	private void watch() {
+		try {
+			while(true) {
+				boolean changed = relevant(watcher.take());
+				// keep collecting changes until the files have been left alone for a little while
+				WatchKey key;
+				while((key = watcher.poll(SETTLETIME, TimeUnit.MILLISECONDS))!=null) { changed |= relevant(key); }
+				if (changed) { reload(); }}}
+		catch (InterruptedException e) { /* we're done watching */ }
+		catch (ClosedWatchServiceException e) { /* we're done watching */ }}
+
+	/**
+	 * check whether a watch key has events for any of the ruleset files, and reset it
+	 * @return true if a ruleset file changed
+	 */
+	private boolean relevant(WatchKey key) {
+		boolean relevant = false;
+		boolean templatedir = ((Path)key.watchable()).endsWith(template);
+		for(WatchEvent<?> event: key.pollEvents()) {
+			if (event.kind()==StandardWatchEventKinds.OVERFLOW) { relevant = true; continue; }
+			String name = event.context().toString();
+			if (templatedir) { relevant |= name.endsWith(".txt") || name.equals(CustomScoresAndValues.COMPILEDFILE); }
+			else { relevant |= name.equals(template + ".cfg"); }}
+		key.reset();
+		return relevant; }
+}
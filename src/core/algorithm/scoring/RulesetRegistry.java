@@ -0,0 +1,119 @@
+/**
+ * This class makes sure every ruleset is only loaded once, however many tables are played with
+ * it. Rulesets are kept by template name and by a hash of the contents of their definitions
+ * (config/template.cfg and the rule files in config/template/), so that a table asking for a
+ * template gets the instance that was loaded for those exact definitions, if there is one.
+ * Rulesets are never changed once they are handed out (scoring happens on HandScorer copies),
+ * so all tables can share them.
+ *
+ * Watching the definitions for changes is shared in the same way: there is one RulesetManager
+ * per template, which loads its rulesets through this registry.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm.scoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Hashtable;
+
+public class RulesetRegistry {
+
+	public static boolean debug = false;
+
+	// the loaded rulesets by template name and content hash, and the key of the latest one for every template
+	private static Hashtable<String,CustomScoresAndValues> rulesets = new Hashtable<String,CustomScoresAndValues>();
+	private static Hashtable<String,String> latest = new Hashtable<String,String>();
+	private static Hashtable<String,RulesetManager> managers = new Hashtable<String,RulesetManager>();
+
+	// statistics
+	private static int loads = 0;
+	private static int hits = 0;
+
+	/**
+	 * get the ruleset for the current definitions of a template, loading it if it was not loaded yet.
+	 * Rulesets that do not validate are not kept, so every request for them loads them again.
+	 * @param template the template name, see CustomScoresAndValues
+	 * @return the shared ruleset, which must not be changed
+	 */
+	public static synchronized CustomScoresAndValues getRuleset(String template) {
+		String key = template + "#" + getContentHash(template);
+		CustomScoresAndValues ruleset = rulesets.get(key);
+		if (ruleset!=null) {
+			hits++;
+			return ruleset; }
+		ruleset = new CustomScoresAndValues(template);
+		loads++;
+		if (ruleset.validate().length>0) { return ruleset; }
+		// the previous definitions of this template are not asked for anymore; whoever still uses them keeps their own reference
+		String previous = latest.put(template, key);
+		if (previous!=null) { rulesets.remove(previous); }
+		rulesets.put(key, ruleset);
+		if(debug) System.out.println("loaded ruleset "+key);
+		return ruleset; }
+
+	/**
+	 * get the manager that keeps the ruleset for a template up to date, starting it if it was not running yet
+	 * @param template the template name, see CustomScoresAndValues
+	 * @return the shared ruleset manager for this template
+	 */
+	public static synchronized RulesetManager getManager(String template) {
+		RulesetManager manager = managers.get(template);
+		if (manager==null) {
+			manager = new RulesetManager(template);
+			manager.start();
+			managers.put(template, manager); }
+		return manager; }
+
+	/**
+	 * computes the hash of the ruleset definitions for a template
+	 * @param template the template name
+	 * @return the hexadecimal SHA-1 hash of the definition files, in a fixed order
+	 */
+	public static String getContentHash(String template) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			File[] files = new File[CustomScoresAndValues.RULEFILES.length+1];
+			files[0] = new File("config" + File.separator + template + ".cfg");
+			for(int r=0; r<CustomScoresAndValues.RULEFILES.length; r++) { files[r+1] = new File("config" + File.separator + template + File.separator + CustomScoresAndValues.RULEFILES[r] + ".txt"); }
+			for(File file: files) {
+				// a missing file hashes differently from an empty one
+				digest.update(file.getName().getBytes("UTF-8"));
+				if (file.exists()) {
+					byte[] content = Files.readAllBytes(file.toPath());
+					digest.update((byte)1);
+					digest.update(String.valueOf(content.length).getBytes("UTF-8"));
+					digest.update(content); }
+				else { digest.update((byte)0); }}
+			String hash = "";
+			for(byte b: digest.digest()) { hash += Integer.toHexString((b & 0xFF) | 0x100).substring(1); }
+			return hash; }
+		catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+		catch (IOException e) {
+			// an unreadable definition never matches a ruleset that was loaded earlier
+			return "unreadable" + System.nanoTime(); }}
+
+	/**
+	 * forget all rulesets, and stop and forget all managers
+	 */
+	public static synchronized void clear() {
+		for(RulesetManager manager: managers.values()) { manager.stop(); }
+		managers.clear();
+		rulesets.clear();
+		latest.clear(); }
+
+	/**
+	 * get the registry statistics
+	 * @return the number of kept rulesets, loads and requests that were served from the registry
+	 */
+	public static synchronized String getStatistics() { return rulesets.size()+" rulesets, "+loads+" loads, "+hits+" shared"; }
+}
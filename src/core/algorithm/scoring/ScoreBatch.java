@@ -0,0 +1,62 @@
+/**
+ * This class holds a batch of dfsa lists that are scored together, rule by rule rather than list
+ * by list (see HandScorer.scoreAll), with an array per score component rather than an object per
+ * list. The arrays only grow, so a batch can be reused for the next set of candidates without
+ * allocating anything.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm.scoring;
+
+import java.util.Arrays;
+
+class ScoreBatch {
+
+	int size = 0;
+	int[][][] lists = new int[0][][];
+	// the position of every list's candidate, in the caller's array
+	int[] positions = new int[0];
+	long[] summaries = new long[0];
+	int[] winpoints = new int[0];
+	int[] tilepoints = new int[0];
+	int[] multipliers = new int[0];
+	int[] scores = new int[0];
+
+	/**
+	 * empty the batch, making room for a number of lists
+	 * @param capacity the number of lists that will be added
+	 */
+	void reset(int capacity) {
+		if (capacity>lists.length) {
+			lists = new int[capacity][][];
+			positions = new int[capacity];
+			summaries = new long[capacity];
+			winpoints = new int[capacity];
+			tilepoints = new int[capacity];
+			multipliers = new int[capacity];
+			scores = new int[capacity]; }
+		size = 0; }
+
+	/**
+	 * add a list to the batch
+	 * @param list the dfsa list to score
+	 * @param position the position of its candidate
+	 */
+	void add(int[][] list, int position) {
+		lists[size] = list;
+		positions[size] = position;
+		size++; }
+
+	/**
+	 * let go of the lists, so that a batch that is kept around does not hold on to them
+	 */
+	void release() {
+		Arrays.fill(lists, 0, size, null);
+		size = 0; }
+}
@@ -0,0 +1,93 @@
+/**
+ * This class holds the outcome of scoring a hand: the final score, what it was made up of, and,
+ * if it was asked for, the point breakdown. A score result never changes once it has been made,
+ * so it can be handed to other threads without any copying or locking.
+ */
+
+/*
+ * (c) nihongoresources
+ * Author: Michiel Kamermans
+ * Version: 2007.03.05.16.00
+ *
+ */
+
+package core.algorithm.scoring;
+
+import utilities.ArrayUtilities;
+
+public final class ScoreResult {
+
+	private final int score;
+	private final int winpoints;
+	private final int tilepoints;
+	private final int multipliers;
+	private final String[] breakdown;
+	// the dfsa list that was scored, so its breakdown can still be generated later (see HandScorer)
+	private final int[][] dfsalist;
+
+	/**
+	 * constructor
+	 * @param score the final score
+	 * @param winpoints the points for the win pattern
+	 * @param tilepoints the basic tilepoints
+	 * @param multipliers the number of multipliers
+	 * @param breakdown the point breakdown, or null if none was built
+	 * @param dfsalist the scored dfsa list, which is not copied and must not be changed afterwards
+	 */
+	ScoreResult(int score, int winpoints, int tilepoints, int multipliers, String[] breakdown, int[][] dfsalist) {
+		this.score = score;
+		this.winpoints = winpoints;
+		this.tilepoints = tilepoints;
+		this.multipliers = multipliers;
+		this.breakdown = (breakdown==null) ? null : breakdown.clone();
+		this.dfsalist = dfsalist; }
+
+	/**
+	 * get the final score
+	 * @return the score, capped to the limit
+	 */
+	public int getScore() { return score; }
+
+	/**
+	 * get the win points
+	 * @return the points for the win pattern, or 0 if the hand was not scored as a winner
+	 */
+	public int getWinPoints() { return winpoints; }
+
+	/**
+	 * get the tilepoints
+	 * @return the basic tilepoints
+	 */
+	public int getTilePoints() { return tilepoints; }
+
+	/**
+	 * get the multipliers
+	 * @return the number of times the points were doubled, before capping
+	 */
+	public int getMultipliers() { return multipliers; }
+
+	/**
+	 * check whether a point breakdown was built for this result
+	 * @return true if getBreakdown has the lines
+	 */
+	public boolean hasBreakdown() { return breakdown!=null; }
+
+	/**
+	 * get the point breakdown
+	 * @return a copy of the breakdown lines, or an empty array if no breakdown was built
+	 */
+	public String[] getBreakdown() { return (breakdown==null) ? new String[0] : breakdown.clone(); }
+
+	/**
+	 * get the dfsa list that was scored
+	 */
+	int[][] getDFSAlist() { return dfsalist; }
+
+	/**
+	 * tostring
+	 */
+	public String toString() {
+		String ret = score+" points ("+winpoints+" win points, "+tilepoints+" tilepoints, "+multipliers+" multipliers)";
+		if (breakdown!=null) { ret += "\r\n"+ArrayUtilities.arrayToString(breakdown); }
+		return ret; }
+}
@@ -14,7 +14,9 @@ import org.nihongoresources.callbackthread.definition.callbackobject.types.CallB
 import utilities.ArrayUtilities;
 import utilities.Logger;
 import core.algorithm.AcceptingFSA;
+import core.algorithm.ShantenCalculator;
 import core.algorithm.TileTokenString;
+import core.algorithm.WinningHandTable;
 import core.algorithm.patterns.PresencePattern;
 import core.algorithm.patterns.RequiredTilePattern;
 import core.algorithm.patterns.TilePattern;
@@ -26,6 +28,7 @@ import core.game.callback.calls.EvaluateCall;
 import core.game.callback.calls.PlaceBidCall;
 import core.game.callback.notices.BiddingTimedOutNotice;
 import core.game.callback.notices.UndoNotice;
+import core.game.models.datastructures.EvaluationState;
 import core.game.models.datastructures.TileData;
 import core.game.play.Hand;
 import core.game.play.exceptions.PlayerWonException;
@@ -158,6 +161,17 @@ public class Player implements CallBackEnabled {
 	 */
 	protected Hand current_hand;
 	
+	/**
+	 * What was worked out during previous evaluations of this hand
+	 */
+	protected EvaluationState evaluationstate = new EvaluationState();
+	
+	/**
+	 * whether discards are picked from the tiles that keep the shanten number minimal, rather than
+	 * through the cascade over the difference pattern of the best play pattern
+	 */
+	protected boolean shantendiscards = true;
+	
 	/**
 	 * setup
 	 */
@@ -276,16 +290,21 @@ public class Player implements CallBackEnabled {
 //		System.out.println(getName()+"> wall size: "+wallsize+", dead wall position: "+deadwallpos);
 		// get all play patterns that are possible
 		TilePattern[] patterns = AcceptingFSA.parse(new TileTokenString(tiles.getConcealed()), tiles.getOpen(), tiles.getSets());
+		evaluationstate.update(tiles.getConcealed(), tiles.getOpen(), tiles.getSets(), windoftheround, playerwind);
 
-		/**
-		 * TODO: adjust winpattern check, because right now it's hardcoded, and that's no good in the long run
-		 * TODO: turn this into a check against all known win patterns.
-		 **/
-		TilePattern[] differences = TilePattern.standardWinPattern().naiveDifferences(patterns);
+		// reuse what was already worked out for patterns seen in the previous evaluations, and evaluate the rest
+		EvaluationState.Evaluation[] evaluations = evaluationstate.evaluate(patterns, patternscorer);
+		TilePattern[] differences = new TilePattern[patterns.length];
+		RequiredTilePattern[] required = new RequiredTilePattern[patterns.length];
+		double[] potentials = new double[patterns.length];
+		for(int p=0; p<patterns.length; p++) {
+			patterns[p] = evaluations[p].pattern;
+			differences[p] = evaluations[p].difference;
+			required[p] = evaluations[p].required;
+			potentials[p] = evaluations[p].potential; }
 
-		// for each play pattern, determine what would be required to get there, how easy it is to win with that requirement, and how much it scores
-		RequiredTilePattern[] required = TilePattern.standardWinPattern().complexDifferences(patterns, differences);
-		double[] ease = patternscorer.determinePatternEase(required, patterns, tiles.getAvailable(), tiles.getConcealed(), windoftheround, playerwind, wallsize, tiles.getConcealedSize(getPreviousPlayerUID()));
+		// how easy it is to win with each requirement depends on the available tiles, so this is always recomputed
+		double[] ease = patternscorer.determinePatternEase(required, patterns, potentials, tiles.getAvailable(), tiles.getConcealed(), windoftheround, playerwind, wallsize, tiles.getConcealedSize(getPreviousPlayerUID()));
 		int[][] scores = patternscorer.determinePoints(required, patterns, tiles.getAvailable(), tiles.getOpen(), tiles.getSets(), tiles.getConcealed(), windoftheround, playerwind, wallsize);
 
 		// determine best path pattern - go for "easiest to go for" at the moment (i.e., play like a beginner)
@@ -364,8 +383,10 @@ public class Player implements CallBackEnabled {
 	 */
 	public int determineDiscard(int wallsize, int deadwallposition) throws PlayerWonException, UndoException
 	{
-		// evaluate best play policy 
-		evaluatePlay(wallsize, deadwallposition);
+		// a complete hand can be recognised straight away, without evaluating all play patterns
+		if(WinningHandTable.isWinningHand(tiles.getConcealed(), tiles.getSets())) { decideOnWin(); }
+		// evaluate best play policy (the shanten discards don't need it, so there it waits until after the discard)
+		if(!shantendiscards) { evaluatePlay(wallsize, deadwallposition); }
 		// determine best discard in this policy
 		int discard = bestDiscard();
 		// if we won, we throw an "I have won, selfdraw" signal.
@@ -385,6 +406,8 @@ public class Player implements CallBackEnabled {
 			int[] ctiles = tiles.getConcealed();
 			discard = ctiles[ctiles.length-1];
 			tiles.discard(discard); }
+		// claims are decided on the play pattern for the hand as it is after the discard
+		if(shantendiscards) { evaluatePlay(wallsize, deadwallposition); }
 		// inform the gui of this discard
 		informGUIOfDiscard(UID,discard,-1);
 		// return tile as discarded 
@@ -400,6 +423,7 @@ public class Player implements CallBackEnabled {
 	 */
 	protected int bestDiscard()
 	{
+		if(shantendiscards) { return shantenDiscard(); }
 		boolean debugthismethod = false;
 
 		/*
@@ -444,7 +468,30 @@ if(debugthismethod) System.out.println("analysing difference pattern "+differenc
 		// END OF DISCARD CASCADE
 
 if(debugthismethod) System.out.println("discards list: "+ArrayUtilities.arrayToString(discards));
-		
+
+		return leastValuable(discards);
+	}
+
+	/**
+	 * This method determines the best discard from the shanten numbers alone: of the tiles that
+	 * leave the hand as few tiles away from ready as possible, the least valuable one is discarded.
+	 * @return the tile that is best discarded or NO_DISCARD if this hand is already a winning hand
+	 */
+	protected int shantenDiscard()
+	{
+		if(ShantenCalculator.shanten(tiles.getConcealed(), tiles.getSets())==ShantenCalculator.COMPLETE) { return NO_DISCARD; }
+		return leastValuable(ShantenCalculator.bestDiscards(tiles.getConcealed(), tiles.getSets()));
+	}
+
+	/**
+	 * Picks the discard with the lowest "intrinsic" value
+	 * @param discards the candidate discards
+	 * @return the least valuable of the candidate discards
+	 */
+	protected int leastValuable(int[] discards)
+	{
+		boolean debugthismethod = false;
+
 		// score the tiles in terms of "intrinsic" value
 		double[] scored = new double[discards.length];
 		PresencePattern best = PresencePattern.createPresencePattern(tiles.getConcealed());
@@ -688,9 +735,21 @@ if(debugthismethod) System.out.println("analysing intrinsic value of discards "+
 		this.tiles = new TileData(UID,numberofplayers);
 		this.playerwind = playerwind;
 		this.windoftheround = TilePattern.EAST + roundnumber;
+		this.evaluationstate.clear();
 		if(gui!=null) { gui.updatePlayer(this); }
 	}
 
+	/**
+	 * Switch this player over to a different ruleset, for the hands that are yet to be played
+	 * @param ruleset the ruleset to play and evaluate hands with
+	 */
+	public void setRuleset(CustomScoresAndValues ruleset) {
+		this.patternscorer = new PatternScorer(algorithmratio, new HandScorer(ruleset));
+		this.handscorer = patternscorer.getHandScorer();
+		this.ruleset = ruleset;
+		this.evaluationstate.clear();
+	}
+
 	/**
 	 * Get the player's UID
 	 * @return int value representing this player.
@@ -0,0 +1,175 @@
+package core.game.models.datastructures;
+
+import java.util.Arrays;
+
+import utilities.LRUCache;
+
+import core.algorithm.TileCountFSA;
+import core.algorithm.patterns.RequiredTilePattern;
+import core.algorithm.patterns.TilePattern;
+import core.algorithm.scoring.PatternScorer;
+
+/**
+ * This class holds what a player worked out during its previous hand evaluations, so that
+ * the next evaluation only has to do the work for play patterns it has not seen before.
+ *
+ * Between two evaluations the concealed tiles usually differ by a single drawn, discarded
+ * or claimed tile, or not at all: a hand is evaluated again for every discard by another
+ * player, and a drawn tile is often discarded straight away. The hand is still parsed in
+ * full every time (hands seen before come out of the parse cache), so the decompositions
+ * themselves are not updated incrementally. What is reused is the work done per play
+ * pattern: its difference and requirement patterns and its potential score only depend on
+ * the pattern itself (plus the winds, for the score). Since a play pattern covers every
+ * concealed tile, a pattern can only come back when the same concealed tiles come back,
+ * so the results for the most recently seen patterns are kept in a small LRU cache.
+ *
+ * Whenever the open tiles or the winds change, everything is thrown away and the next
+ * evaluation is a full recompute.
+ */
+public class EvaluationState {
+
+	/**
+	 * The stored results for a single play pattern.
+	 */
+	public static class Evaluation {
+		public TilePattern pattern;
+		public TilePattern difference;
+		public RequiredTilePattern required;
+		public double potential;
+		public Evaluation(TilePattern pattern, TilePattern difference, RequiredTilePattern required, double potential) {
+			this.pattern = pattern;
+			this.difference = difference;
+			this.required = required;
+			this.potential = potential; }}
+
+	private int[] counts = new int[0];
+	private int[] open = new int[0];
+	private int[] sets = new int[0];
+	private int windoftheround = -1;
+	private int playerwind = -1;
+
+	// evaluations for the most recently seen play patterns, keyed on the bin values of the
+	// pattern, since the patterns themselves get modified by the difference computation
+	public static int EVALUATIONCACHESIZE = 1024;
+	private LRUCache<String,Evaluation> stored = new LRUCache<String,Evaluation>(EVALUATIONCACHESIZE);
+
+	// statistics
+	private int lastdelta = 0;
+	private long fullrecomputes = 0;
+	private long keptupdates = 0;
+	private long reused = 0;
+	private long computed = 0;
+
+	/**
+	 * Bring the state up to date for the hand that is about to be evaluated.
+	 * @param concealed the concealed tiles
+	 * @param open the open tiles
+	 * @param sets how the open tiles are arranged
+	 * @param windoftheround the wind of the round
+	 * @param playerwind the player's own wind
+	 * @return false if the state had to be cleared, true if earlier evaluations can be reused
+	 */
+	public boolean update(int[] concealed, int[] open, int[] sets, int windoftheround, int playerwind)
+	{
+		int[] newcounts = TileCountFSA.histogram(concealed);
+		if(windoftheround!=this.windoftheround || playerwind!=this.playerwind || !Arrays.equals(open, this.open) || !Arrays.equals(sets, this.sets)) {
+			this.windoftheround = windoftheround;
+			this.playerwind = playerwind;
+			this.open = open.clone();
+			this.sets = sets.clone();
+			counts = newcounts;
+			stored.clear();
+			lastdelta = concealed.length;
+			fullrecomputes++;
+			return false; }
+
+		// how many tiles were drawn/claimed or discarded since the last evaluation
+		int delta = 0;
+		for(int t=0; t<newcounts.length; t++) { delta += Math.abs(newcounts[t] - (t<counts.length ? counts[t] : 0)); }
+		lastdelta = delta;
+		counts = newcounts;
+		keptupdates++;
+		return true;
+	}
+
+	/**
+	 * Work out the difference and requirement patterns and the potential score for each play
+	 * pattern, reusing the stored results for patterns that were evaluated before.
+	 * @param patterns the play patterns, as produced by the parse for the hand passed to update()
+	 * @param scorer the pattern scorer used for the potential scores
+	 * @return the evaluation for each play pattern, in the same order
+	 */
+	public Evaluation[] evaluate(TilePattern[] patterns, PatternScorer scorer)
+	{
+		Evaluation[] evaluations = new Evaluation[patterns.length];
+		String[] keys = new String[patterns.length];
+		int[] unseen = new int[patterns.length];
+		int unseencount = 0;
+		for(int p=0; p<patterns.length; p++) {
+			keys[p] = key(patterns[p]);
+			evaluations[p] = get(keys[p]);
+			if(evaluations[p]==null) { unseen[unseencount++] = p; }}
+		if(unseencount==0) return evaluations;
+
+		TilePattern[] newpatterns = new TilePattern[unseencount];
+		for(int u=0; u<unseencount; u++) { newpatterns[u] = patterns[unseen[u]]; }
+
+		/**
+		 * TODO: adjust winpattern check, because right now it's hardcoded, and that's no good in the long run
+		 * TODO: turn this into a check against all known win patterns.
+		 **/
+		TilePattern[] newdifferences = TilePattern.standardWinPattern().naiveDifferences(newpatterns);
+
+		// for each play pattern, determine what would be required to get there, and how much it scores
+		RequiredTilePattern[] newrequired = TilePattern.standardWinPattern().complexDifferences(newpatterns, newdifferences);
+		double[] newpotentials = scorer.scorePotentials(newpatterns, windoftheround, playerwind);
+
+		for(int u=0; u<unseencount; u++) {
+			int p = unseen[u];
+			evaluations[p] = new Evaluation(newpatterns[u], newdifferences[u], newrequired[u], newpotentials[u]);
+			stored.put(keys[p], evaluations[p]);
+			computed++; }
+		return evaluations;
+	}
+
+	/**
+	 * Look up the stored evaluation for a play pattern
+	 * @param key the key for the play pattern, as produced by key()
+	 * @return the stored evaluation, or null if this pattern was not evaluated recently
+	 */
+	private Evaluation get(String key)
+	{
+		Evaluation evaluation = stored.get(key);
+		if(evaluation!=null) { reused++; }
+		return evaluation;
+	}
+
+	/**
+	 * Build the lookup key for a play pattern, from the values in its bins
+	 */
+	private static String key(TilePattern pattern)
+	{
+		StringBuilder key = new StringBuilder();
+		for(int g=0; g<TilePattern.genericnames.length; g++) {
+			key.append((char)('0'+pattern.getGenericValue(g)));
+			for(int s=0; s<TilePattern.specificnames.length; s++) {
+				int value = pattern.getSpecificValue(g, s);
+				if(value!=0) { key.append((char)('a'+s)).append((char)('0'+value)); }}
+			key.append('|'); }
+		return key.toString();
+	}
+
+	/**
+	 * Throw away all stored evaluations, forcing a full recompute on the next evaluation
+	 */
+	public void clear() { windoftheround = -1; }
+
+	public int getLastDelta() { return lastdelta; }
+
+	/**
+	 * toString, listing the statistics
+	 */
+	public String toString() {
+		return fullrecomputes+" full recomputes, "+keptupdates+" updates that kept the stored evaluations (last delta: "+lastdelta+" tiles), "
+				+reused+" pattern evaluations reused, "+computed+" computed"; }
+}
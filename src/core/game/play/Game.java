@@ -12,6 +12,9 @@ import core.algorithm.patterns.TilePattern;
 import core.algorithm.scoring.CustomScoresAndValues;
 import core.algorithm.scoring.HandScorer;
 import core.algorithm.scoring.PatternScorer;
+import core.algorithm.scoring.RulesetManager;
+import core.algorithm.scoring.RulesetRegistry;
+import core.algorithm.scoring.ScoreResult;
 import core.game.callback.calls.SetupGameCall;
 import core.game.callback.calls.StartGameCall;
 import core.game.callback.calls.StartHandCall;
@@ -41,9 +44,21 @@ public class Game implements CallBackEnabled {
 	private Player[] players;
 	
 	/**
-	 * The scoring and value object, containing all the rules of play
+	 * The scoring and value object, containing all the rules of play. This is the ruleset
+	 * snapshot that was current when the hand that is being played started.
 	 */
 	private CustomScoresAndValues ruleset;
+
+	/**
+	 * Scores the hands at the end of a hand, for the current ruleset snapshot. Its scoring
+	 * methods that return a ScoreResult leave it unchanged, so it can be shared.
+	 */
+	private HandScorer scorer;
+
+	/**
+	 * Keeps the ruleset up to date with its definitions on disk
+	 */
+	private RulesetManager rulesets;
 	
 	/**
 	 * used to indicate whether we are ready to genuine play a game
@@ -133,8 +148,10 @@ public class Game implements CallBackEnabled {
 		// quite importantly, we register the caller as being our owner now, so we have a hook for posting calls and notices
 		owner = call.getCaller();
 		
-		// create the ruleset object
-		ruleset = new CustomScoresAndValues(call.getRuleSetLocation());
+		// get the ruleset, which is shared with every other table that plays with it, and reloaded whenever its definitions change
+		rulesets = RulesetRegistry.getManager(call.getRuleSetLocation());
+		ruleset = rulesets.getRuleset();
+		scorer = new HandScorer(ruleset);
 		
 		// set up as many players as are playing
 		players = new Player[call.getNumberOfPlayers()];
@@ -167,6 +184,13 @@ public class Game implements CallBackEnabled {
 	{
 		if (gui!=null) { gui.println("Start game called."); }
 		if(ready) {
+			// a hand is played with the ruleset that is current when it starts
+			CustomScoresAndValues snapshot = rulesets.getRuleset();
+			if(snapshot!=ruleset) {
+				ruleset = snapshot;
+				scorer = new HandScorer(ruleset);
+				for(Player player: players) { player.setRuleset(ruleset); }}
+
 			// create a hand (= single iteration of play) and register a start call to it. We will not "remember" this object,
 			// but instead will interact with it purely based on the fact that it will keep calling us back
 			new Hand(gui,ruleset).register(new StartHandCall(this,players,call.getWindOfTheRound(),call.getWindOffset(),call.getRoundNumber(),call.getHandNumber(),call.getRedeal()));
@@ -198,7 +222,6 @@ public class Game implements CallBackEnabled {
 	 * Process a win
 	 */
 	private void processHandWasWonNotice(HandWasWonNotice notice) {
-		HandScorer scorer = new HandScorer(ruleset);
 		String[][] pointbreakdowns = new String[players.length][];
 		int east=0;
 		int[] tilepoints = new int[players.length];
@@ -210,9 +233,11 @@ public class Game implements CallBackEnabled {
 			// handle tilepoints
 			for(Player player: players) {
 				if(player.getWind()==TilePattern.EAST) { east = player.getUID(); }
-				if (player.getUID()==notice.getPlayerUID()) { tilepoints[player.getUID()] = scorer.scoreWinner(player, notice.getWindOfTheRound()); }
-				else { tilepoints[player.getUID()] = scorer.scoreNormal(player, notice.getWindOfTheRound()); }
-				pointbreakdowns[player.getUID()]=scorer.getLastPointBreakdown(); }
+				ScoreResult result;
+				if (player.getUID()==notice.getPlayerUID()) { result = scorer.scoreWinner(player, notice.getWindOfTheRound(), true); }
+				else { result = scorer.scoreNormal(player, notice.getWindOfTheRound(), true); }
+				tilepoints[player.getUID()] = result.getScore();
+				pointbreakdowns[player.getUID()]=result.getBreakdown(); }
 	
 			// handle scores
 			int scores[] = ruleset.calculateScores(tilepoints, notice.getPlayerUID(), east);
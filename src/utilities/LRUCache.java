@@ -0,0 +1,72 @@
+package utilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe, least-recently-used cache. Once the cache holds its maximum
+ * number of entries, adding a new entry evicts the entry that was used longest ago.
+ * Hits, misses and evictions are counted so that the effectiveness of the cache can
+ * be inspected at runtime.
+ */
+public class LRUCache<K,V> {
+
+	private int capacity;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private LinkedHashMap<K,V> entries;
+
+	/**
+	 * set up a cache that holds at most capacity entries
+	 * @param capacity the maximum number of entries
+	 */
+	public LRUCache(int capacity) {
+		this.capacity = capacity;
+		// access ordered, so that iteration order runs from least to most recently used
+		entries = new LinkedHashMap<K,V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+				if(size()>LRUCache.this.capacity) { evictions++; return true; }
+				return false; }}; }
+
+	/**
+	 * look up a cached value
+	 * @param key
+	 * @return the cached value, or null if the key is not cached
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if(value==null) misses++; else hits++;
+		return value; }
+
+	/**
+	 * cache a value, evicting the least recently used entry if the cache is full
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(K key, V value) { entries.put(key, value); }
+
+	/**
+	 * empty the cache and reset the counters
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0; }
+
+	public synchronized int size() { return entries.size(); }
+	public synchronized int getCapacity() { return capacity; }
+	public synchronized long getHits() { return hits; }
+	public synchronized long getMisses() { return misses; }
+	public synchronized long getEvictions() { return evictions; }
+
+	/**
+	 * toString, listing the cache statistics
+	 */
+	public synchronized String toString() {
+		long lookups = hits+misses;
+		return size()+"/"+capacity+" entries, "+hits+" hits, "+misses+" misses, "+evictions+" evictions"
+				+ (lookups>0 ? " ("+(100*hits/lookups)+"% hit rate)" : ""); }
+}